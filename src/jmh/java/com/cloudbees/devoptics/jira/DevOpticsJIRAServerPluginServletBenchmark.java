@@ -0,0 +1,139 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Drives DevOpticsJIRAServerPluginServlet.doGet through each of its routes, using the package-private test constructor
+ * and the stubs in ServletStubs.  Run with: mvn -Pbenchmark test-compile exec:exec
+ * Throughput, average time and (via the gc profiler) allocation per operation are reported for each route. */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class DevOpticsJIRAServerPluginServletBenchmark {
+
+    /* As the servlet compiles the content with, so we get the same hash. */
+    private static final String[] TEMPLATE_NAMES = { "baseUrl", "contextPath", "loggedIn", "loginUrl", "xsrfToken" };
+
+    private HttpServletRequest blankRequest;
+    private HttpServletRequest bootstrapRequest;
+    private HttpServletRequest doLoginLoggedInRequest;
+    private HttpServletRequest doLoginNotLoggedInRequest;
+    private HttpServletRequest isLoggedInRequest;
+    private HttpServletRequest loadHtmlRequest;
+    private HttpServletRequest loadVersionedHtmlGzipRequest;
+    private HttpServletRequest loadVersionedHtmlRequest;
+    private DevOpticsJIRAServerPluginServlet loggedInServlet;
+    private DevOpticsJIRAServerPluginServlet notLoggedInServlet;
+    private ServletStubs.Response response;
+    private HttpServletRequest unknownRequest;
+
+    @Setup
+    public void setup() throws IOException {
+
+        final byte[] html;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("serve-me.html")) {
+            html = IOUtils.toByteArray(is);
+        }
+        loggedInServlet = new DevOpticsJIRAServerPluginServlet(() -> html, () -> true, ReturnUrlTokens::generateKey, req -> "benchmark-token");
+        notLoggedInServlet = new DevOpticsJIRAServerPluginServlet(() -> html, () -> false, ReturnUrlTokens::generateKey, req -> "benchmark-token");
+
+        final Map<String, String> none = Collections.emptyMap();
+        final HttpSession session = ServletStubs.session("benchmark-session");
+        session.setAttribute("devOpticsReturnUrl", "https://devoptics.cloudbees.com/u/");
+
+        blankRequest = ServletStubs.request(null, none, none, session);
+        unknownRequest = ServletStubs.request("/not-supported", none, none, session);
+        bootstrapRequest = ServletStubs.request("/bootstrap", none,
+                Collections.singletonMap("devOpticsReturnUrl", "https://devoptics.cloudbees.com/u/"), session);
+        isLoggedInRequest = ServletStubs.request("/is-logged-in", none, none, session);
+        loadHtmlRequest = ServletStubs.request("/load.html", none, none, session);
+        final String versionedPath = "/load." + new HtmlContent(html, TEMPLATE_NAMES).getHash() + ".html";
+        loadVersionedHtmlRequest = ServletStubs.request(versionedPath, none, none, session);
+        loadVersionedHtmlGzipRequest = ServletStubs.request(versionedPath, Collections.singletonMap("Accept-Encoding", "gzip, deflate, br"), none, session);
+        doLoginLoggedInRequest = ServletStubs.request("/do-login", none, none, session);
+        doLoginNotLoggedInRequest = ServletStubs.request("/do-login", none,
+                Collections.singletonMap("devOpticsReturnUrl", "https://devoptics.cloudbees.com/u/"), session);
+        response = ServletStubs.response();
+    }
+
+    @Benchmark
+    public int blankPath() throws ServletException, IOException {
+        return dispatch(loggedInServlet, blankRequest);
+    }
+
+    @Benchmark
+    public int bootstrap_isLoggedIn() throws ServletException, IOException {
+        return dispatch(loggedInServlet, bootstrapRequest);
+    }
+
+    @Benchmark
+    public int bootstrap_isNotLoggedIn() throws ServletException, IOException {
+        return dispatch(notLoggedInServlet, bootstrapRequest);
+    }
+
+    @Benchmark
+    public int doLogin_isLoggedIn() throws ServletException, IOException {
+        return dispatch(loggedInServlet, doLoginLoggedInRequest);
+    }
+
+    @Benchmark
+    public int doLogin_isNotLoggedIn() throws ServletException, IOException {
+        return dispatch(notLoggedInServlet, doLoginNotLoggedInRequest);
+    }
+
+    @Benchmark
+    public int isLoggedIn_false() throws ServletException, IOException {
+        return dispatch(notLoggedInServlet, isLoggedInRequest);
+    }
+
+    @Benchmark
+    public int isLoggedIn_true() throws ServletException, IOException {
+        return dispatch(loggedInServlet, isLoggedInRequest);
+    }
+
+    @Benchmark
+    public int loadHtml() throws ServletException, IOException {
+        return dispatch(loggedInServlet, loadHtmlRequest);
+    }
+
+    @Benchmark
+    public int loadVersionedHtml() throws ServletException, IOException {
+        return dispatch(loggedInServlet, loadVersionedHtmlRequest);
+    }
+
+    @Benchmark
+    public int loadVersionedHtml_gzip() throws ServletException, IOException {
+        return dispatch(loggedInServlet, loadVersionedHtmlGzipRequest);
+    }
+
+    @Benchmark
+    public int unknownPath() throws ServletException, IOException {
+        return dispatch(loggedInServlet, unknownRequest);
+    }
+
+    private int dispatch(final DevOpticsJIRAServerPluginServlet servlet, final HttpServletRequest request) throws ServletException, IOException {
+
+        // The response stub is reused so its own allocations don't show up in the numbers.
+        // Returning the status stops the call being optimised away.
+        response.reset();
+        servlet.doGet(request, response.get());
+        return response.getStatus();
+    }
+}
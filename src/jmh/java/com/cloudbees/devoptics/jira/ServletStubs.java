@@ -0,0 +1,754 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+
+/* Lightweight request, response and session stand-ins for driving the servlet outside a container.
+ * Written out by hand rather than as dynamic proxies, so that calling them allocates nothing and doesn't show up in the
+ * gc profiler's figures for the servlet.  Only the methods the servlet calls do anything; the rest answer null, false
+ * or zero. */
+final class ServletStubs {
+
+    /* A response that throws away its body and remembers the last status it was given.  Reusable via reset(). */
+    static final class Response {
+
+        private final StubResponse response = new StubResponse();
+
+        private Response() {
+        }
+
+        HttpServletResponse get() {
+            return response;
+        }
+
+        int getStatus() {
+            return response.status;
+        }
+
+        void reset() {
+            response.status = 0;
+        }
+    }
+
+    private static final class DiscardingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(final int b) {
+            // Discard
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            // Discard
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final class StubRequest implements HttpServletRequest {
+
+        private final Map<String, String> headers;
+        private final Map<String, String> parameters;
+        private final String pathInfo;
+        private final String requestUri;
+        private final StringBuffer requestUrl;
+        private final HttpSession session;
+
+        private StubRequest(final String pathInfo, final Map<String, String> headers, final Map<String, String> parameters,
+                final HttpSession session) {
+
+            this.pathInfo = pathInfo;
+            this.headers = headers;
+            this.parameters = parameters;
+            this.session = session;
+            this.requestUri = "/plugins/servlet/devoptics" + (pathInfo == null ? "" : pathInfo);
+            this.requestUrl = new StringBuffer("http://localhost:8080" + requestUri);
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return null;
+        }
+
+        @Override
+        public void setCharacterEncoding(final String env) {
+            // Ignored
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1L;
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return null;
+        }
+
+        @Override
+        public String getParameter(final String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(final String name) {
+
+            final String value = parameters.get(name);
+            return value == null ? null : new String[] { value };
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public String getScheme() {
+            return "http";
+        }
+
+        @Override
+        public String getServerName() {
+            return "localhost";
+        }
+
+        @Override
+        public int getServerPort() {
+            return 8080;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return null;
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHost() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object o) {
+            // Ignored
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            // Ignored
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.ENGLISH;
+        }
+
+        @Override
+        public Enumeration<Locale> getLocales() {
+            return Collections.enumeration(Collections.singleton(Locale.ENGLISH));
+        }
+
+        @Override
+        public boolean isSecure() {
+            return false;
+        }
+
+        @Override
+        public RequestDispatcher getRequestDispatcher(final String path) {
+            return null;
+        }
+
+        @Override
+        public String getRealPath(final String path) {
+            return null;
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 0;
+        }
+
+        @Override
+        public String getLocalName() {
+            return "localhost";
+        }
+
+        @Override
+        public String getLocalAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 8080;
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return null;
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            throw new IllegalStateException("Not supported");
+        }
+
+        @Override
+        public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+            throw new IllegalStateException("Not supported");
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return false;
+        }
+
+        @Override
+        public boolean isAsyncSupported() {
+            return false;
+        }
+
+        @Override
+        public AsyncContext getAsyncContext() {
+            throw new IllegalStateException("Not started");
+        }
+
+        @Override
+        public DispatcherType getDispatcherType() {
+            return DispatcherType.REQUEST;
+        }
+
+        @Override
+        public String getAuthType() {
+            return null;
+        }
+
+        @Override
+        public Cookie[] getCookies() {
+            return null;
+        }
+
+        @Override
+        public long getDateHeader(final String name) {
+            return -1L;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(final String name) {
+
+            final String value = headers.get(name);
+            return value == null ? Collections.emptyEnumeration() : Collections.enumeration(Collections.singleton(value));
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(headers.keySet());
+        }
+
+        @Override
+        public int getIntHeader(final String name) {
+            return -1;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public String getPathInfo() {
+            return pathInfo;
+        }
+
+        @Override
+        public String getPathTranslated() {
+            return null;
+        }
+
+        @Override
+        public String getContextPath() {
+            return "";
+        }
+
+        @Override
+        public String getQueryString() {
+            return null;
+        }
+
+        @Override
+        public String getRemoteUser() {
+            return null;
+        }
+
+        @Override
+        public boolean isUserInRole(final String role) {
+            return false;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return null;
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            return session == null ? null : session.getId();
+        }
+
+        @Override
+        public String getRequestURI() {
+            return requestUri;
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+            return requestUrl;
+        }
+
+        @Override
+        public String getServletPath() {
+            return "/plugins/servlet";
+        }
+
+        @Override
+        public HttpSession getSession(final boolean create) {
+            return session;
+        }
+
+        @Override
+        public HttpSession getSession() {
+            return session;
+        }
+
+        @Override
+        public String changeSessionId() {
+            throw new IllegalStateException("Not supported");
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            return session != null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return session != null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return false;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromUrl() {
+            return false;
+        }
+
+        @Override
+        public boolean authenticate(final HttpServletResponse response) {
+            return false;
+        }
+
+        @Override
+        public void login(final String username, final String password) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void logout() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Part> getParts() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Part getPart(final String name) {
+            return null;
+        }
+
+        @Override
+        public <T extends HttpUpgradeHandler> T upgrade(final Class<T> handlerClass) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final class StubResponse implements HttpServletResponse {
+
+        private final ServletOutputStream outputStream = new DiscardingOutputStream();
+        private int status;
+        private final PrintWriter writer = new PrintWriter(outputStream);
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            return writer;
+        }
+
+        @Override
+        public void setCharacterEncoding(final String charset) {
+            // Ignored
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            // Ignored
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            // Ignored
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            // Ignored
+        }
+
+        @Override
+        public void setBufferSize(final int size) {
+            // Ignored
+        }
+
+        @Override
+        public int getBufferSize() {
+            return 0;
+        }
+
+        @Override
+        public void flushBuffer() {
+            // Nothing buffered
+        }
+
+        @Override
+        public void resetBuffer() {
+            // Nothing buffered
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            status = 0;
+        }
+
+        @Override
+        public void setLocale(final Locale loc) {
+            // Ignored
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.ENGLISH;
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            // Ignored
+        }
+
+        @Override
+        public boolean containsHeader(final String name) {
+            return false;
+        }
+
+        @Override
+        public String encodeURL(final String url) {
+            return url;
+        }
+
+        @Override
+        public String encodeRedirectURL(final String url) {
+            return url;
+        }
+
+        @Override
+        public String encodeUrl(final String url) {
+            return url;
+        }
+
+        @Override
+        public String encodeRedirectUrl(final String url) {
+            return url;
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) {
+            status = sc;
+        }
+
+        @Override
+        public void sendError(final int sc) {
+            status = sc;
+        }
+
+        @Override
+        public void sendRedirect(final String location) {
+            status = SC_FOUND;
+        }
+
+        @Override
+        public void setDateHeader(final String name, final long date) {
+            // Ignored
+        }
+
+        @Override
+        public void addDateHeader(final String name, final long date) {
+            // Ignored
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            // Ignored
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            // Ignored
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            // Ignored
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            // Ignored
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            status = sc;
+        }
+
+        @Override
+        public void setStatus(final int sc, final String sm) {
+            status = sc;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return null;
+        }
+
+        @Override
+        public Collection<String> getHeaders(final String name) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return Collections.emptyList();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final class StubSession implements HttpSession {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final String id;
+
+        private StubSession(final String id) {
+            this.id = id;
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0L;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return 0L;
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return null;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final int interval) {
+            // Ignored
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return 0;
+        }
+
+        @Override
+        public javax.servlet.http.HttpSessionContext getSessionContext() {
+            return null;
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Object getValue(final String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(attributes.keySet());
+        }
+
+        @Override
+        public String[] getValueNames() {
+            return attributes.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void putValue(final String name, final Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public void removeValue(final String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public void invalidate() {
+            attributes.clear();
+        }
+
+        @Override
+        public boolean isNew() {
+            return false;
+        }
+    }
+
+    private ServletStubs() {
+    }
+
+    static HttpServletRequest request(final String pathInfo, final Map<String, String> headers, final Map<String, String> parameters,
+            final HttpSession session) {
+        return new StubRequest(pathInfo, headers, parameters, session);
+    }
+
+    static Response response() {
+        return new Response();
+    }
+
+    static HttpSession session(final String id) {
+        return new StubSession(id);
+    }
+}
@@ -0,0 +1,161 @@
+package com.cloudbees.devoptics.jira;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Load test for DevOpticsJIRAServerPluginServlet.  Starts it in an embedded container (see LoadTestServer), sets a number
+ * of simulated browsers (see LoadTestClient) loose on it for a while, and reports the throughput, latency and errors for
+ * each kind of request.  Runs entirely locally.  Run with: mvn -Pload-test test-compile exec:exec
+ *
+ * Configured with system properties, which the load-test profile passes through from the Maven command line:
+ *   loadTest.concurrency      - simulated browsers.  Default 16.
+ *   loadTest.durationSeconds  - how long to measure for.  Default 30.
+ *   loadTest.warmupSeconds    - how long to run before measuring, to let the JIT do its thing.  Default 10.
+ *   loadTest.mix              - relative weights of the steps each browser picks from.  Default mostly polling, with the
+ *                               odd page load and login: is-logged-in=90,bootstrap=5,load.html=3,login=2
+ *   loadTest.serverThreads    - the container's request thread pool size.  Default 200. */
+public class LoadTest {
+
+    /* What's happened to one kind of request. */
+    private static final class Result {
+
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+
+    private static final String CONCURRENCY_KEY = "loadTest.concurrency";
+    private static final String DURATION_SECONDS_KEY = "loadTest.durationSeconds";
+    private static final String MIX_DEFAULT = "is-logged-in=90,bootstrap=5,load.html=3,login=2";
+    private static final String MIX_KEY = "loadTest.mix";
+    private static final String SERVER_THREADS_KEY = "loadTest.serverThreads";
+    private static final String WARMUP_SECONDS_KEY = "loadTest.warmupSeconds";
+
+    /* Swapped for a fresh map when warm-up ends, so only what happens after that is reported. */
+    private static volatile ConcurrentMap<String, Result> results = new ConcurrentHashMap<>();
+    private static volatile boolean running = true;
+
+    public static void main(final String[] args) throws Exception {
+
+        final int concurrency = Integer.getInteger(CONCURRENCY_KEY, 16);
+        final long durationSeconds = Long.getLong(DURATION_SECONDS_KEY, 30L);
+        final long warmupSeconds = Long.getLong(WARMUP_SECONDS_KEY, 10L);
+        final String[] mix = parseMix(System.getProperty(MIX_KEY, MIX_DEFAULT));
+
+        // Otherwise HttpURLConnection only keeps 5 idle connections to the server, and the rest are opened afresh every time.
+        System.setProperty("http.maxConnections", String.valueOf(concurrency));
+
+        final LoadTestServer server = new LoadTestServer(0, Integer.getInteger(SERVER_THREADS_KEY, 200));
+        final String baseUrl = "http://localhost:" + server.start();
+        System.out.println("Servlet running at " + baseUrl + LoadTestServer.API_PATH);
+        System.out.println(concurrency + " browsers, mix " + System.getProperty(MIX_KEY, MIX_DEFAULT) + ", warming up for " + warmupSeconds + "s");
+
+        final List<Thread> browsers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            final LoadTestClient client = new LoadTestClient(baseUrl, LoadTest::record);
+            final Thread thread = new Thread(() -> {
+                while (running) {
+                    client.run(mix[ThreadLocalRandom.current().nextInt(mix.length)]);
+                }
+            }, "load-test-browser-" + i);
+            thread.start();
+            browsers.add(thread);
+        }
+
+        try {
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            results = new ConcurrentHashMap<>();
+            final long start = System.nanoTime();
+            System.out.println("Measuring for " + durationSeconds + "s");
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            final ConcurrentMap<String, Result> measured = results;
+            final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            report(new TreeMap<>(measured), elapsedSeconds);
+        } finally {
+            running = false;
+            for (final Thread browser : browsers) {
+                browser.join();
+            }
+            server.stop();
+        }
+    }
+
+    /* The weighted mix as a list of steps, each appearing as many times as its weight, to pick from at random. */
+    private static String[] parseMix(final String mix) {
+
+        final List<String> steps = new ArrayList<>();
+        for (final String entry : mix.split(",")) {
+            final String[] parts = entry.trim().split("=");
+            final String step = parts[0].trim();
+            if (!Arrays.asList(LoadTestClient.STEPS).contains(step)) {
+                throw new IllegalArgumentException("Unknown step " + step + " in " + MIX_KEY + ".  Known steps are "
+                        + String.join(", ", LoadTestClient.STEPS));
+            }
+            final int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                steps.add(step);
+            }
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException(MIX_KEY + " has nothing to do");
+        }
+        return steps.toArray(new String[steps.size()]);
+    }
+
+    private static void record(final String name, final int status, final long nanos) {
+
+        final Result result = results.computeIfAbsent(name, n -> new Result());
+        result.latency.record(nanos);
+        if (status < 0) {
+            result.failures.increment();
+        } else {
+            result.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    private static void report(final Map<String, Result> measured, final double elapsedSeconds) {
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-22s %10s %10s %10s %10s %10s %8s  %s", "request", "count", "per sec", "p50 ms",
+                "p99 ms", "p99.9 ms", "errors", "statuses"));
+
+        long totalCount = 0;
+        long totalErrors = 0;
+        for (final Map.Entry<String, Result> entry : measured.entrySet()) {
+            final Result result = entry.getValue();
+            final long count = result.latency.getCount();
+            // Anything the server couldn't handle, or we couldn't even get an answer for.  429s are reported, but are the
+            // rate limiter doing its job rather than errors.
+            long errors = result.failures.sum();
+            final Map<Integer, Long> statuses = new TreeMap<>();
+            for (final Map.Entry<Integer, LongAdder> status : result.statuses.entrySet()) {
+                statuses.put(status.getKey(), status.getValue().sum());
+                if (status.getKey() >= 500) {
+                    errors += status.getValue().sum();
+                }
+            }
+            totalCount += count;
+            totalErrors += errors;
+
+            System.out.println(String.format(Locale.ROOT, "%-22s %10d %10.1f %10.3f %10.3f %10.3f %7.2f%%  %s", entry.getKey(), count,
+                    count / elapsedSeconds, result.latency.quantileMicros(0.5) / 1e3, result.latency.quantileMicros(0.99) / 1e3,
+                    result.latency.quantileMicros(0.999) / 1e3, percent(errors, count), statuses));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-22s %10d %10.1f %10s %10s %10s %7.2f%%", "total", totalCount, totalCount / elapsedSeconds,
+                "", "", "", percent(totalErrors, totalCount)));
+    }
+
+    private static double percent(final long part, final long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,137 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/* One simulated browser: its own session cookie, making one request at a time, with no think time.  Each step of the
+ * request mix is one or more requests, following the redirects a browser would. */
+class LoadTestClient {
+
+    /* Records the outcome of each request.  Status is -1 if the request failed outright. */
+    static interface Recorder {
+        void record(String name, int status, long nanos);
+    }
+
+    static final String STEP_BOOTSTRAP = "bootstrap";
+    static final String STEP_IS_LOGGED_IN = "is-logged-in";
+    static final String STEP_LOAD_HTML = "load.html";
+    static final String STEP_LOGIN = "login";
+    static final String STEP_METRICS = "metrics";
+    static final String[] STEPS = { STEP_BOOTSTRAP, STEP_IS_LOGGED_IN, STEP_LOAD_HTML, STEP_LOGIN, STEP_METRICS };
+
+    private static final String RETURN_URL = "https://devoptics.example.com/u/";
+    private static final String SESSION_COOKIE = "JSESSIONID";
+
+    private final String baseUrl;
+    private final byte[] buffer = new byte[8192];
+    private String cookie;
+    private final Recorder recorder;
+
+    LoadTestClient(final String baseUrl, final Recorder recorder) {
+
+        this.baseUrl = baseUrl;
+        this.recorder = recorder;
+    }
+
+    void run(final String step) {
+
+        switch (step) {
+            case STEP_BOOTSTRAP: {
+                get(STEP_BOOTSTRAP, LoadTestServer.API_PATH + "/bootstrap?devOpticsReturnUrl=" + encode(RETURN_URL), null);
+                break;
+            }
+            case STEP_IS_LOGGED_IN: {
+                get(STEP_IS_LOGGED_IN, LoadTestServer.API_PATH + "/is-logged-in", null);
+                break;
+            }
+            case STEP_LOAD_HTML: {
+                // The browser is sent to the versioned URL, which it fetches compressed.
+                final String location = get(STEP_LOAD_HTML, LoadTestServer.API_PATH + "/load.html", null);
+                if (location != null) {
+                    get("load.{hash}.html", location, "gzip, deflate, br");
+                }
+                break;
+            }
+            case STEP_LOGIN: {
+                // Start again as a new visitor, so there's a login to do: /do-login, Jira's login page, then /do-login again.
+                cookie = null;
+                final String login = get("do-login", LoadTestServer.API_PATH + "/do-login?devOpticsReturnUrl=" + encode(RETURN_URL), null);
+                if (login != null) {
+                    final String back = get("login.jsp", login, null);
+                    if (back != null) {
+                        get("do-login (logged in)", back, null);
+                    }
+                }
+                break;
+            }
+            case STEP_METRICS: {
+                get(STEP_METRICS, LoadTestServer.API_PATH + "/metrics", null);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown step " + step);
+            }
+        }
+    }
+
+    /* Make a request and read all of the response, returning the absolute URL it redirects to (if anywhere).  The path
+     * can also be an absolute URL. */
+    private String get(final String name, final String path, final String acceptEncoding) {
+
+        final long start = System.nanoTime();
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(path.startsWith("http") ? path : baseUrl + path).openConnection();
+            connection.setInstanceFollowRedirects(false);
+            if (cookie != null) {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            if (acceptEncoding != null) {
+                connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+            }
+
+            final int status = connection.getResponseCode();
+            // Read everything, so the connection goes back in to the keep-alive pool.
+            try (InputStream is = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (is != null) {
+                    while (is.read(buffer) >= 0) {
+                        // Discard
+                    }
+                }
+            }
+            recorder.record(name, status, System.nanoTime() - start);
+
+            keepSessionCookie(connection);
+            final String location = connection.getHeaderField("Location");
+            return location == null ? null : new URL(connection.getURL(), location).toString();
+        } catch (final IOException e) {
+            recorder.record(name, -1, System.nanoTime() - start);
+            return null;
+        }
+    }
+
+    private void keepSessionCookie(final HttpURLConnection connection) {
+
+        // Header names are case-insensitive, but HttpURLConnection's map of them isn't.
+        for (int i = 0; connection.getHeaderField(i) != null; i++) {
+            final String setCookie = connection.getHeaderField(i);
+            if ("Set-Cookie".equalsIgnoreCase(connection.getHeaderFieldKey(i)) && setCookie.startsWith(SESSION_COOKIE + "=")) {
+                final int end = setCookie.indexOf(';');
+                cookie = end < 0 ? setCookie : setCookie.substring(0, end);
+            }
+        }
+    }
+
+    private static String encode(final String value) {
+
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (final IOException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/* DevOpticsJIRAServerPluginServlet running in an embedded Jetty, mounted where Jira would mount it, with just enough of
+ * Jira faked around it for every route to work:
+ *  - A filter standing in for Seraph, Jira's authentication filter.  A session is logged in if it has the same attribute
+ *    Seraph would put there, in which case the request gets a remote user, as it would in Jira.
+ *  - A /login.jsp that logs the session straight in and sends the browser on to os_destination, as a successful login
+ *    would.
+ * Everything else the servlet would get from Jira - the HTML content, signing key and XSRF token - is supplied through
+ * its package-private constructor. */
+class LoadTestServer {
+
+    /* Seraph's stand-in.  Puts the logged-in state where the servlet's stand-in AuthenticationContext can see it. */
+    private static final class AuthenticationFilter implements Filter {
+
+        @Override
+        public void init(final FilterConfig filterConfig) {
+            // Nothing to do
+        }
+
+        @Override
+        public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+                throws IOException, ServletException {
+
+            final HttpServletRequest req = (HttpServletRequest) request;
+            final HttpSession session = req.getSession(false);
+            final String user = session == null ? null : (String) session.getAttribute(SERAPH_LOGGED_IN_KEY);
+            LOGGED_IN_USER.set(user);
+            try {
+                chain.doFilter(user == null ? req : new HttpServletRequestWrapper(req) {
+
+                    @Override
+                    public String getRemoteUser() {
+                        return user;
+                    }
+                }, response);
+            } finally {
+                LOGGED_IN_USER.remove();
+            }
+        }
+
+        @Override
+        public void destroy() {
+            // Nothing to do
+        }
+    }
+
+    /* /login.jsp's stand-in.  Everyone gets in, first time. */
+    private static final class LoginServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+            req.getSession().setAttribute(SERAPH_LOGGED_IN_KEY, "load-test-user");
+            final String destination = req.getParameter("os_destination");
+            resp.sendRedirect(destination == null ? "/" : destination);
+        }
+    }
+
+    static final String API_PATH = "/plugins/servlet/devoptics";
+    static final String LOGIN_PATH = "/login.jsp";
+
+    private static final String HTML_TO_SERVE = "serve-me.html";
+    /* The user logged in to the current request's session, or null.  Set by the AuthenticationFilter. */
+    private static final ThreadLocal<String> LOGGED_IN_USER = new ThreadLocal<>();
+    /* The same session attribute as the servlet's default SessionAuthenticationContext looks for. */
+    private static final String SERAPH_LOGGED_IN_KEY = "seraph_defaultauthenticator_user";
+
+    private final Server server;
+
+    LoadTestServer(final int port, final int maxThreads) throws IOException {
+
+        final byte[] html;
+        try (InputStream is = LoadTestServer.class.getClassLoader().getResourceAsStream(HTML_TO_SERVE)) {
+            html = IOUtils.toByteArray(is);
+        }
+        final String signingKey = ReturnUrlTokens.generateKey();
+        final DevOpticsJIRAServerPluginServlet servlet = new DevOpticsJIRAServerPluginServlet(
+                () -> html,
+                () -> LOGGED_IN_USER.get() != null,
+                () -> signingKey,
+                req -> "load-test-xsrf-token");
+
+        final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/");
+        final FilterHolder filterHolder = new FilterHolder(new AuthenticationFilter());
+        filterHolder.setAsyncSupported(true);
+        context.addFilter(filterHolder, "/*", EnumSet.of(DispatcherType.REQUEST));
+        final ServletHolder servletHolder = new ServletHolder(servlet);
+        servletHolder.setAsyncSupported(true);
+        context.addServlet(servletHolder, API_PATH + "/*");
+        context.addServlet(new ServletHolder(new LoginServlet()), LOGIN_PATH);
+
+        server = new Server(new QueuedThreadPool(maxThreads));
+        final ServerConnector connector = new ServerConnector(server);
+        connector.setPort(port);
+        server.addConnector(connector);
+        server.setHandler(context);
+    }
+
+    /* Start the server, returning the port it's listening on. */
+    int start() throws Exception {
+
+        server.start();
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    void stop() throws Exception {
+        server.stop();
+    }
+}
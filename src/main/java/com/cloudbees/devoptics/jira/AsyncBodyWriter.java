@@ -0,0 +1,178 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/* Writes a response body that's already in memory without holding a container thread while a slow client takes it.
+ *
+ * A blocking write of a body bigger than the socket's send buffer parks the container thread until the client has read
+ * most of it, so a few slow or stalled clients can tie up the pool.  Bodies at least minAsyncBytes long are instead
+ * handed to a Servlet 3.1 WriteListener: the request goes async, the thread goes back to the pool, and the container
+ * calls us back whenever the socket will take more.  The bytes are written straight from the caller's array, a chunk
+ * at a time, so the array must not change afterwards - the cached content and assets never do - and nothing is copied
+ * per request.  A client that hasn't taken the whole body within timeoutMillis is cut off.
+ *
+ * Smaller bodies fit in the socket's buffers and never block, so they're just written.  So is everything for a request
+ * other than a GET, or if the container won't let us go async. */
+class AsyncBodyWriter {
+
+    /* Writes one body, as the socket will take it. */
+    private final class Write implements AsyncListener, WriteListener {
+
+        private final AsyncContext asyncContext;
+        private final byte[] bytes;
+        private final int end;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final ServletOutputStream outputStream;
+        private int position;
+        private final int start;
+
+        private Write(final AsyncContext asyncContext, final ServletOutputStream outputStream, final byte[] bytes, final int offset,
+                final int length) {
+
+            this.asyncContext = asyncContext;
+            this.outputStream = outputStream;
+            this.bytes = bytes;
+            this.start = offset;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        private void finish(final AtomicLong outcome) {
+
+            if (finished.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                outcome.incrementAndGet();
+                try {
+                    asyncContext.complete();
+                } catch (final IllegalStateException e) {
+                    // Already completed by the container.
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+
+            // The container finished with the request some other way, e.g. the connection closed.
+            if (finished.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            onError(event.getThrowable());
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Async write failed after " + (position - start) + " bytes", t);
+            }
+            finish(errors);
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            finish(timeouts);
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+
+            // Only finish once the socket's taken the last chunk, so the container isn't left with any of it to block on.
+            while (outputStream.isReady()) {
+                if (position >= end) {
+                    finish(completed);
+                    return;
+                }
+                final int chunk = Math.min(CHUNK_BYTES, end - position);
+                outputStream.write(bytes, position, chunk);
+                position += chunk;
+            }
+        }
+    }
+
+    /* Small enough that the container doesn't have to buffer much of a chunk the socket won't take yet. */
+    private static final int CHUNK_BYTES = 8 * 1024;
+    private static final Logger LOG = Logger.getLogger(AsyncBodyWriter.class);
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final int minAsyncBytes;
+    private final long timeoutMillis;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    AsyncBodyWriter(final int minAsyncBytes, final long timeoutMillis) {
+
+        this.minAsyncBytes = minAsyncBytes;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /* Whether a body this long would be written asynchronously.  For callers that would otherwise stream it, and only
+     * need it in memory if it's going to be.  Only ever for GETs: the response to a HEAD has no body for the socket to
+     * take, so some containers (Tomcat 8.5 for one) never call the WriteListener back, and it would hang until it timed
+     * out. */
+    boolean isAsync(final HttpServletRequest req, final int length) {
+        return length >= minAsyncBytes && "GET".equals(req.getMethod()) && req.isAsyncSupported() && !req.isAsyncStarted();
+    }
+
+    /* Write the whole array as the response body.  Status and headers must already be set. */
+    void write(final HttpServletRequest req, final HttpServletResponse resp, final byte[] bytes) throws IOException {
+        write(req, resp, bytes, 0, bytes.length);
+    }
+
+    /* Write part of the array as the response body.  Status and headers must already be set, as once the request has
+     * gone async the response may be committed at any time. */
+    void write(final HttpServletRequest req, final HttpServletResponse resp, final byte[] bytes, final int offset, final int length)
+            throws IOException {
+
+        final ServletOutputStream outputStream = resp.getOutputStream();
+        if (!isAsync(req, length)) {
+            if (offset == 0 && length == bytes.length) {
+                outputStream.write(bytes);
+            } else {
+                outputStream.write(bytes, offset, length);
+            }
+            return;
+        }
+
+        final AsyncContext asyncContext = req.startAsync(req, resp);
+        asyncContext.setTimeout(timeoutMillis);
+        final Write write = new Write(asyncContext, outputStream, bytes, offset, length);
+        asyncContext.addListener(write);
+        inFlight.incrementAndGet();
+        // The container calls onWritePossible as soon as the listener's set, and from then on whenever the socket drains.
+        outputStream.setWriteListener(write);
+    }
+
+    void write(final PrometheusWriter writer) {
+
+        writer.header("devoptics_async_writes_total", "counter", "Response bodies written asynchronously, by outcome.")
+                .sample("devoptics_async_writes_total", "outcome", "complete", completed.get())
+                .sample("devoptics_async_writes_total", "outcome", "timeout", timeouts.get())
+                .sample("devoptics_async_writes_total", "outcome", "error", errors.get());
+        writer.header("devoptics_async_writes_in_flight", "gauge", "Response bodies currently being written asynchronously.")
+                .sample("devoptics_async_writes_in_flight", inFlight.get());
+    }
+}
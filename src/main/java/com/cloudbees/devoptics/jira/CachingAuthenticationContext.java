@@ -0,0 +1,159 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.AuthenticationContext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/* Remembers the answer from an AuthenticationContext for a short while, per session, so that a front end polling
+ * /is-logged-in doesn't cost us a trip through the component registry every time.
+ *
+ * An entry is only trusted while the request's remote user is the same as when the entry was made, so logging in or out
+ * within the same session invalidates it straight away.  Requests without a session aren't cached at all. */
+class CachingAuthenticationContext {
+
+    private static final class Entry {
+
+        private final long expiresAt;
+        private final boolean loggedInUser;
+        private final String remoteUser;
+
+        private Entry(final boolean loggedInUser, final String remoteUser, final long expiresAt) {
+
+            this.loggedInUser = loggedInUser;
+            this.remoteUser = remoteUser;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /* How many entries to look at for expired ones when making room, so a full cache doesn't cost a walk of every entry on
+     * every miss. */
+    private static final int EVICTION_SAMPLE = 32;
+    /* How many stores between sweeps for expired entries, so they don't sit around until the cache fills up. */
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final LongSupplier clock;
+    private final AuthenticationContext delegate;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final int maxSize;
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong stores = new AtomicLong();
+    private final long ttlNanos;
+
+    CachingAuthenticationContext(final AuthenticationContext delegate, final long ttlMillis, final int maxSize) {
+        this(delegate, ttlMillis, maxSize, System::nanoTime);
+    }
+
+    /* For unit testing */
+    CachingAuthenticationContext(final AuthenticationContext delegate, final long ttlMillis, final int maxSize, final LongSupplier clock) {
+
+        this.delegate = delegate;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    boolean isLoggedInUser(final HttpServletRequest req) {
+
+        final String key = key(req);
+        if (key == null || ttlNanos <= 0) {
+            misses.increment();
+            return delegate.isLoggedInUser();
+        }
+
+        final long now = clock.getAsLong();
+        final String remoteUser = req.getRemoteUser();
+        final Entry entry = entries.get(key);
+        if (entry != null && now - entry.expiresAt < 0 && Objects.equals(entry.remoteUser, remoteUser)) {
+            hits.increment();
+            return entry.loggedInUser;
+        }
+
+        misses.increment();
+        final boolean loggedInUser = delegate.isLoggedInUser();
+        entries.put(key, new Entry(loggedInUser, remoteUser, now + ttlNanos));
+        if (stores.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep(now);
+        }
+        if (entries.size() > maxSize) {
+            evict(now);
+        }
+        return loggedInUser;
+    }
+
+    /* Forget whatever we know about the request's session, e.g. because the user is about to log in. */
+    void invalidate(final HttpServletRequest req) {
+
+        final String key = key(req);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /* Make room for one more.  Only looks at a sample of entries, as this is on the path of every miss. */
+    private void evict(final long now) {
+
+        // First drop whatever has expired anyway among the first few entries.
+        final Iterator<Entry> iterator = entries.values().iterator();
+        for (int i = 0; i < EVICTION_SAMPLE && iterator.hasNext(); i++) {
+            if (now - iterator.next().expiresAt >= 0) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        // Still too big?  Then drop entries until we're back under the limit.  They're all short-lived, so which ones
+        // go doesn't matter much.  Each one removed brings us closer, so this only runs as far as we're over.
+        final Iterator<Entry> overflow = entries.values().iterator();
+        while (entries.size() > maxSize && overflow.hasNext()) {
+            overflow.next();
+            overflow.remove();
+            evictions.increment();
+        }
+    }
+
+    /* Drop everything that has expired. */
+    private void sweep(final long now) {
+
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().expiresAt >= 0) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static String key(final HttpServletRequest req) {
+
+        // Don't create a session just to have something to cache against.
+        final HttpSession session = req.getSession(false);
+        return session == null ? null : session.getId();
+    }
+}
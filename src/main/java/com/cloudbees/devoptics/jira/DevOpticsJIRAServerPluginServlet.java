@@ -1,11 +1,18 @@
 package com.cloudbees.devoptics.jira;
 
 import com.atlassian.jira.component.ComponentAccessor;
+import com.atlassian.jira.config.properties.ApplicationProperties;
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.security.xsrf.XsrfTokenGenerator;
+import com.atlassian.jira.user.ApplicationUser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,6 +20,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -20,6 +28,12 @@ import org.apache.log4j.Logger;
 
 public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
 
+    /* Functional interface for providing the yes/no as to whether the user making a request is a Jira administrator.
+     * Abstracted out to make the class more testable. */
+    static interface AdministratorCheck {
+        boolean isAdministrator(HttpServletRequest req);
+    }
+
     /* Functional interface for providing the yes/no as to whether a user is logged in or not.
      * Abstracted out to make the class more testable. */
     static interface AuthenticationContext {
@@ -32,21 +46,115 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
         byte[] getContent() throws IOException;
     }
 
+    /* Functional interface for providing the yes/no as to whether the user a session belongs to is logged in or not.
+     * Unlike AuthenticationContext, this has to work away from the request thread.
+     * Abstracted out to make the class more testable. */
+    static interface SessionAuthenticationContext {
+        boolean isLoggedIn(HttpSession session);
+    }
+
+    /* Functional interface for getting the key used to sign return URL tokens.  Every node in a cluster must get the same key.
+     * Abstracted out to make the class more testable. */
+    static interface SigningKeyStore {
+        String getOrCreateKey();
+    }
+
+    /* Functional interface for getting the user's XSRF token, for the front end to send back with anything that changes state.
+     * Abstracted out to make the class more testable. */
+    static interface XsrfTokenProvider {
+        String getToken(HttpServletRequest req);
+    }
+
     private static final String API_PATH = "/plugins/servlet/devoptics";
     /* This is basically matching "/plugins/servlet/devoptics", but as long as it isn't followed by slashes, alphanumerics, hyphens or underscores.
      * It is allowed to be followed by the end-of-line though. */
     private static final String API_PATH_REGEX = API_PATH + "($|[^/0-9a-zA-Z_-])";
+    private static final String ASSETS_CLASSPATH_PREFIX_DEFAULT = "images/";
+    private static final String ASSETS_CLASSPATH_PREFIX_KEY = "com.cloudbees.devoptics.jira.assets.classpathPrefix";
+    private static final String ASSETS_DIR_KEY = "com.cloudbees.devoptics.jira.assets.dir";
+    private static final long ASSETS_MAX_AGE_SECONDS_DEFAULT = 3_600L;
+    private static final String ASSETS_MAX_AGE_SECONDS_KEY = "com.cloudbees.devoptics.jira.assets.maxAgeSeconds";
+    /* Bodies smaller than this fit in a socket's send buffer, so a blocking write of them never waits on the client. */
+    private static final int ASYNC_WRITE_MIN_BYTES_DEFAULT = 64 * 1024;
+    private static final String ASYNC_WRITE_MIN_BYTES_KEY = "com.cloudbees.devoptics.jira.asyncWrite.minBytes";
+    private static final long ASYNC_WRITE_TIMEOUT_MILLIS_DEFAULT = 60_000L;
+    private static final String ASYNC_WRITE_TIMEOUT_MILLIS_KEY = "com.cloudbees.devoptics.jira.asyncWrite.timeoutMillis";
+    private static final int AUTH_CACHE_MAX_SIZE_DEFAULT = 10_000;
+    private static final String AUTH_CACHE_MAX_SIZE_KEY = "com.cloudbees.devoptics.jira.auth.cache.maxSize";
+    private static final long AUTH_CACHE_TTL_MILLIS_DEFAULT = 5_000L;
+    private static final String AUTH_CACHE_TTL_MILLIS_KEY = "com.cloudbees.devoptics.jira.auth.cache.ttlMillis";
     private static final String CLICKJACKING_PROTECTION_EXCLUDE_KEY = "com.atlassian.jira.clickjacking.protection.exclude";
+    private static final String DEV_OPTICS_RETURN_TOKEN = "devOpticsReturnToken";
     private static final String DEV_OPTICS_RETURN_URL = "devOpticsReturnUrl";
     private static final String HTML_TO_SERVE = "serve-me.html";
     private static final Logger LOG = Logger.getLogger(DevOpticsJIRAServerPluginServlet.class);
+    private static final long LOGIN_EVENTS_CHECK_MILLIS_DEFAULT = 1_000L;
+    private static final String LOGIN_EVENTS_CHECK_MILLIS_KEY = "com.cloudbees.devoptics.jira.loginEvents.checkMillis";
+    private static final long LOGIN_EVENTS_HEARTBEAT_MILLIS_DEFAULT = 30_000L;
+    private static final String LOGIN_EVENTS_HEARTBEAT_MILLIS_KEY = "com.cloudbees.devoptics.jira.loginEvents.heartbeatMillis";
+    private static final long LOGIN_EVENTS_MAX_CONNECTION_MILLIS_DEFAULT = 300_000L;
+    private static final String LOGIN_EVENTS_MAX_CONNECTION_MILLIS_KEY = "com.cloudbees.devoptics.jira.loginEvents.maxConnectionMillis";
+    private static final String PATH_ASSETS_PREFIX = "/assets/";
+    private static final String PATH_BOOTSTRAP = "/bootstrap";
+    private static final String PATH_DEBUG_RECENT = "/debug/recent";
     private static final String PATH_DO_LOGIN = "/do-login";
     private static final String PATH_IS_LOGGED_IN = "/is-logged-in";
     private static final String PATH_LOAD_HTML = "/load.html";
+    private static final String PATH_LOAD_HTML_VERSIONED_PREFIX = "/load.";
+    private static final String PATH_LOAD_HTML_VERSIONED_SUFFIX = ".html";
+    private static final String PATH_LOGIN_EVENTS = "/login-events";
+    private static final String PATH_METRICS = "/metrics";
+    private static final String PATH_READY = "/ready";
+    private static final long POLL_BASE_MILLIS_DEFAULT = 5_000L;
+    private static final String POLL_BASE_MILLIS_KEY = "com.cloudbees.devoptics.jira.poll.baseMillis";
+    private static final long POLL_BUSY_LATENCY_MILLIS_DEFAULT = 50L;
+    private static final String POLL_BUSY_LATENCY_MILLIS_KEY = "com.cloudbees.devoptics.jira.poll.busyLatencyMillis";
+    private static final int POLL_BUSY_REQUESTS_PER_SECOND_DEFAULT = 200;
+    private static final String POLL_BUSY_REQUESTS_PER_SECOND_KEY = "com.cloudbees.devoptics.jira.poll.busyRequestsPerSecond";
+    private static final String POLL_INTERVAL_HEADER = "X-DevOptics-Poll-Interval-Millis";
+    private static final long POLL_MAX_MILLIS_DEFAULT = 60_000L;
+    private static final String POLL_MAX_MILLIS_KEY = "com.cloudbees.devoptics.jira.poll.maxMillis";
+    private static final int RATE_LIMIT_BURST_DEFAULT = 10;
+    private static final int RATE_LIMIT_MAX_CLIENTS_DEFAULT = 100_000;
+    private static final String RATE_LIMIT_MAX_CLIENTS_KEY = "com.cloudbees.devoptics.jira.rateLimit.maxClients";
+    private static final String RATE_LIMIT_PREFIX = "com.cloudbees.devoptics.jira.rateLimit.";
+    private static final int REQUEST_LOG_SIZE_DEFAULT = 512;
+    private static final String REQUEST_LOG_SIZE_KEY = "com.cloudbees.devoptics.jira.requestLog.size";
+    private static final String RETURN_URL_MODE_KEY = "com.cloudbees.devoptics.jira.returnUrl.mode";
+    private static final String RETURN_URL_MODE_TOKEN = "token";
+    private static final long RETURN_URL_TOKEN_TTL_SECONDS_DEFAULT = 600L;
+    private static final String RETURN_URL_TOKEN_TTL_SECONDS_KEY = "com.cloudbees.devoptics.jira.returnUrl.tokenTtlSeconds";
+    private static final String ROUTE_ASSETS = "/assets/*";
+    private static final String ROUTE_LOAD_HTML_VERSIONED = "/load.{hash}.html";
+    private static final String ROUTE_NOT_FOUND = "not-found";
+    /* The session attribute Seraph, Jira's authentication framework, keeps the logged-in user under.
+     * See com.atlassian.seraph.auth.DefaultAuthenticator.LOGGED_IN_KEY. */
+    private static final String SERAPH_LOGGED_IN_KEY = "seraph_defaultauthenticator_user";
     private static final long serialVersionUID = 1L;
-
-    private AuthenticationContext authenticationContext;
-    private HtmlContentProvider htmlContentProvider;
+    /* HttpServletResponse has no constant for 429 Too Many Requests. */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final String SIGNING_KEY_PROPERTY = "com.cloudbees.devoptics.jira.returnUrl.signingKey";
+    /* The values the HTML content can have filled in by /bootstrap, as {{name}} or {{js:name}}.  See HtmlTemplate.
+     * doBootstrap passes the values in this order. */
+    private static final String[] TEMPLATE_NAMES = { "baseUrl", "contextPath", "loggedIn", "loginUrl", "xsrfToken" };
+    private static final int WARMUP_ITERATIONS_DEFAULT = 100;
+    private static final String WARMUP_ITERATIONS_KEY = "com.cloudbees.devoptics.jira.warmup.iterations";
+    private static final String WARMUP_XSRF_TOKEN = "warmup";
+
+    private AdministratorCheck administratorCheck;
+    private StaticAssets assets;
+    private AsyncBodyWriter asyncBodyWriter;
+    private CachingAuthenticationContext authenticationContext;
+    private HtmlContentCache htmlContentCache;
+    private LoginEventStream loginEventStream;
+    private PollInterval pollInterval;
+    private RateLimiter rateLimiter;
+    private RequestLog requestLog;
+    private final RequestMetrics requestMetrics = new RequestMetrics();
+    private ReturnUrlTokens returnUrlTokens;
+    private boolean returnUrlTokensEnabled;
+    private final Warmup warmup = new Warmup();
+    private XsrfTokenProvider xsrfTokenProvider;
 
     public DevOpticsJIRAServerPluginServlet() {
         this(
@@ -58,47 +166,222 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
                     }
                 },
                 // Default impl of the AuthenticationContext functional interface
+                () -> ComponentAccessor.getJiraAuthenticationContext().isLoggedInUser());
+    }
+
+    /* For unit testing */
+    DevOpticsJIRAServerPluginServlet(final HtmlContentProvider htmlContentProvider, final AuthenticationContext authenticationContext) {
+        this(htmlContentProvider, authenticationContext,
+                // Default impl of the SigningKeyStore functional interface.  Application properties live in the database, so are
+                // shared across the cluster.
                 () -> {
-                    final boolean isLoggedInUser = ComponentAccessor.getJiraAuthenticationContext().isLoggedInUser();
-                    LOG.debug("isLoggedInUser = " + isLoggedInUser);
-                    return isLoggedInUser;
+                    final ApplicationProperties applicationProperties = ComponentAccessor.getApplicationProperties();
+                    String key = applicationProperties.getString(SIGNING_KEY_PROPERTY);
+                    if (StringUtils.isBlank(key)) {
+                        key = ReturnUrlTokens.generateKey();
+                        applicationProperties.setString(SIGNING_KEY_PROPERTY, key);
+                        LOG.debug("Generated a new return URL signing key");
+                    }
+                    return key;
                 });
     }
 
     /* For unit testing */
-    DevOpticsJIRAServerPluginServlet(final HtmlContentProvider htmlContentProvider, final AuthenticationContext authenticationContext) {
+    DevOpticsJIRAServerPluginServlet(final HtmlContentProvider htmlContentProvider, final AuthenticationContext authenticationContext,
+            final SigningKeyStore signingKeyStore) {
+        this(htmlContentProvider, authenticationContext, signingKeyStore,
+                // Default impl of the XsrfTokenProvider functional interface
+                req -> ComponentAccessor.getComponent(XsrfTokenGenerator.class).generateToken(req));
+    }
 
-        this.htmlContentProvider = htmlContentProvider;
-        this.authenticationContext = authenticationContext;
+    /* For unit testing */
+    DevOpticsJIRAServerPluginServlet(final HtmlContentProvider htmlContentProvider, final AuthenticationContext authenticationContext,
+            final SigningKeyStore signingKeyStore, final XsrfTokenProvider xsrfTokenProvider) {
+        this(htmlContentProvider, authenticationContext, signingKeyStore, xsrfTokenProvider,
+                // Default impl of the AdministratorCheck functional interface
+                req -> {
+                    final ApplicationUser user = ComponentAccessor.getJiraAuthenticationContext().getLoggedInUser();
+                    return user != null && ComponentAccessor.getGlobalPermissionManager().hasPermission(GlobalPermissionKey.ADMINISTER, user);
+                });
+    }
+
+    /* For unit testing */
+    DevOpticsJIRAServerPluginServlet(final HtmlContentProvider htmlContentProvider, final AuthenticationContext authenticationContext,
+            final SigningKeyStore signingKeyStore, final XsrfTokenProvider xsrfTokenProvider, final AdministratorCheck administratorCheck) {
+
+        this.xsrfTokenProvider = xsrfTokenProvider;
+        this.administratorCheck = administratorCheck;
+        this.requestLog = new RequestLog(Integer.getInteger(REQUEST_LOG_SIZE_KEY, REQUEST_LOG_SIZE_DEFAULT));
+        this.asyncBodyWriter = new AsyncBodyWriter(Integer.getInteger(ASYNC_WRITE_MIN_BYTES_KEY, ASYNC_WRITE_MIN_BYTES_DEFAULT),
+                Long.getLong(ASYNC_WRITE_TIMEOUT_MILLIS_KEY, ASYNC_WRITE_TIMEOUT_MILLIS_DEFAULT));
+        final String assetsDir = System.getProperty(ASSETS_DIR_KEY);
+        this.assets = new StaticAssets(StringUtils.isBlank(assetsDir) ? null : Paths.get(assetsDir),
+                System.getProperty(ASSETS_CLASSPATH_PREFIX_KEY, ASSETS_CLASSPATH_PREFIX_DEFAULT),
+                Long.getLong(ASSETS_MAX_AGE_SECONDS_KEY, ASSETS_MAX_AGE_SECONDS_DEFAULT), asyncBodyWriter);
+        this.returnUrlTokens = new ReturnUrlTokens(signingKeyStore,
+                Long.getLong(RETURN_URL_TOKEN_TTL_SECONDS_KEY, RETURN_URL_TOKEN_TTL_SECONDS_DEFAULT));
+        this.returnUrlTokensEnabled = RETURN_URL_MODE_TOKEN.equals(System.getProperty(RETURN_URL_MODE_KEY));
+        this.htmlContentCache = new HtmlContentCache(FlightRecorder.timed(htmlContentProvider), TEMPLATE_NAMES);
+        this.pollInterval = new PollInterval(Long.getLong(POLL_BASE_MILLIS_KEY, POLL_BASE_MILLIS_DEFAULT),
+                Long.getLong(POLL_MAX_MILLIS_KEY, POLL_MAX_MILLIS_DEFAULT),
+                Integer.getInteger(POLL_BUSY_REQUESTS_PER_SECOND_KEY, POLL_BUSY_REQUESTS_PER_SECOND_DEFAULT),
+                Long.getLong(POLL_BUSY_LATENCY_MILLIS_KEY, POLL_BUSY_LATENCY_MILLIS_DEFAULT));
+        // Off unless system properties turn them on.  Clients without a session are told apart by IP address, so behind a
+        // load balancer or NAT that the container can't see past, every anonymous user would share one limit.
+        this.rateLimiter = new RateLimiter(Integer.getInteger(RATE_LIMIT_MAX_CLIENTS_KEY, RATE_LIMIT_MAX_CLIENTS_DEFAULT));
+        configureRateLimit(PATH_BOOTSTRAP);
+        configureRateLimit(ROUTE_ASSETS);
+        configureRateLimit(PATH_DEBUG_RECENT);
+        configureRateLimit(PATH_DO_LOGIN);
+        configureRateLimit(PATH_IS_LOGGED_IN);
+        configureRateLimit(PATH_LOAD_HTML);
+        configureRateLimit(PATH_LOGIN_EVENTS);
+        configureRateLimit(PATH_METRICS);
+        configureRateLimit(PATH_READY);
+        configureRateLimit(ROUTE_LOAD_HTML_VERSIONED);
+        this.loginEventStream = new LoginEventStream(
+                // Default impl of the SessionAuthenticationContext functional interface.
+                session -> session.getAttribute(SERAPH_LOGGED_IN_KEY) != null,
+                Long.getLong(LOGIN_EVENTS_HEARTBEAT_MILLIS_KEY, LOGIN_EVENTS_HEARTBEAT_MILLIS_DEFAULT),
+                Long.getLong(LOGIN_EVENTS_CHECK_MILLIS_KEY, LOGIN_EVENTS_CHECK_MILLIS_DEFAULT),
+                Long.getLong(LOGIN_EVENTS_MAX_CONNECTION_MILLIS_KEY, LOGIN_EVENTS_MAX_CONNECTION_MILLIS_DEFAULT));
+        this.authenticationContext = new CachingAuthenticationContext(FlightRecorder.timed(authenticationContext),
+                Long.getLong(AUTH_CACHE_TTL_MILLIS_KEY, AUTH_CACHE_TTL_MILLIS_DEFAULT),
+                Integer.getInteger(AUTH_CACHE_MAX_SIZE_KEY, AUTH_CACHE_MAX_SIZE_DEFAULT));
     }
 
     @Override
     public void init() throws ServletException {
 
+        // Jira initialises servlets lazily, so this runs inside the first request to reach the plugin, not when it's enabled.
         LOG.debug("Initialising");
 
         /* As soon as this controller is loaded, whitelist our API. */
-        configureClickjackingProtectionExcludeProperty();
+        warmup.run("clickjacking-protection", true, this::configureClickjackingProtectionExcludeProperty);
+
+        // Load the content now, rather than on the first request, and make sure there's something there.
+        warmup.run("content", true, () -> {
+            if (htmlContentCache.get().getIdentity().getBytes().length == 0) {
+                throw new IOException("The HTML content is empty");
+            }
+        });
+
+        // Put synthetic requests through the handlers, so the first real ones don't pay for looking up Jira's components,
+        // class loading and the JIT.  These can fail outside of a real request, e.g. where Jira wants a user, without
+        // stopping real requests from working.
+        final int iterations = Integer.getInteger(WARMUP_ITERATIONS_KEY, WARMUP_ITERATIONS_DEFAULT);
+        if (iterations > 0) {
+            warmup.run("authentication", false, () -> authenticationContext.isLoggedInUser(Warmup.request(PATH_IS_LOGGED_IN, null)));
+            warmUpHandler(PATH_LOAD_HTML, null, iterations);
+            warmUpHandler(ROUTE_LOAD_HTML_VERSIONED, null, iterations);
+            warmUpHandler(ROUTE_LOAD_HTML_VERSIONED, "gzip", iterations);
+            warmUpHandler(PATH_BOOTSTRAP, null, iterations);
+            warmUpHandler(PATH_IS_LOGGED_IN, null, iterations);
+            warmUpHandler(PATH_METRICS, null, iterations);
+        }
+        warmup.complete();
+    }
+
+    @Override
+    public void destroy() {
+
+        LOG.debug("Destroying");
+
+        loginEventStream.shutdown();
+        super.destroy();
     }
 
     @Override
     protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
 
-        LOG.debug("Handling request to " + req.getRequestURL() + " with query parameters " + req.getQueryString());
+        final long start = System.nanoTime();
+        final FlightRecorder.Request event = FlightRecorder.request(req);
+        final RecordingResponse response = new RecordingResponse(resp);
 
         // Get the requested path.  The bit that comes after /plugins/servlet/devoptics/...
         final String path = req.getPathInfo();
+        final String route = route(path);
+
+        // If a handler throws, the container will send a 500.  Record it as such.
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            final long retryAfterNanos = rateLimiter.acquire(route, client(req));
+            if (retryAfterNanos > 0) {
+                /* Too many requests from this client.  Tell it when to come back. */
+                response.addHeader("Retry-After", String.valueOf(TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+                response.setStatus(SC_TOO_MANY_REQUESTS);
+            } else {
+                dispatch(route, path, req, response);
+            }
+            status = response.getRecordedStatus();
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            requestMetrics.record(route, status, nanos);
+            // Warm-up dispatches straight to the handlers, so only real traffic gets here to count towards how busy we are.
+            pollInterval.record(nanos);
+            requestLog.record(route, status, nanos, response.getRecordedLoggedInUser(), response.getRecordedRedirect());
+            event.finish(req, route, status, response.getRecordedDeclaredContentLength());
+        }
+    }
 
-        if (StringUtils.isBlank(path)) {
-            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            return;
+    private void configureClickjackingProtectionExcludeProperty() {
+
+        // Get the current value of the click-jacking protection exclude property.
+        String value = System.getProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY);
+        LOG.debug("Current value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property is '" + value + "'");
+
+        if (StringUtils.isBlank(value)) {
+            // The key or the key's values is missing.  Add our API.
+            System.setProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY, API_PATH);
+            LOG.debug("Setting value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property to '" + API_PATH + "'");
+        } else {
+            // The key's value exists.  Next we need to check if our API is already in there.  Don't re-add ourselves if we are.
+            final Pattern pattern = Pattern.compile(API_PATH_REGEX);
+            final Matcher matcher = pattern.matcher(value);
+            if (!matcher.find()) {
+                // No match. Add ourselves
+                value += "," + API_PATH;
+                System.setProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY, value);
+                LOG.debug("Modifying value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property to '" + value + "'");
+            }
         }
+    }
 
-        switch (path) {
+    /* Look up the rate limit for a route from system properties.  E.g. for /is-logged-in:
+     *   com.cloudbees.devoptics.jira.rateLimit./is-logged-in.perSecond
+     *   com.cloudbees.devoptics.jira.rateLimit./is-logged-in.burst
+     * With no rate set, or a rate or burst of 0, there's no limit. */
+    private void configureRateLimit(final String route) {
+
+        final double perSecond = Double.parseDouble(System.getProperty(RATE_LIMIT_PREFIX + route + ".perSecond", "0"));
+        final int burst = Integer.getInteger(RATE_LIMIT_PREFIX + route + ".burst", RATE_LIMIT_BURST_DEFAULT);
+        rateLimiter.limit(route, perSecond, burst);
+    }
+
+    private void dispatch(final String route, final String path, final HttpServletRequest req, final RecordingResponse resp)
+            throws ServletException, IOException {
+
+        switch (route) {
             case PATH_LOAD_HTML: {
                 doLoadHtml(req, resp);
                 break;
             }
+            case ROUTE_LOAD_HTML_VERSIONED: {
+                doLoadVersionedHtml(req, resp, path);
+                break;
+            }
+            case ROUTE_ASSETS: {
+                doAssets(req, resp, path);
+                break;
+            }
+            case PATH_BOOTSTRAP: {
+                doBootstrap(req, resp);
+                break;
+            }
+            case PATH_DEBUG_RECENT: {
+                doDebugRecent(req, resp);
+                break;
+            }
             case PATH_IS_LOGGED_IN: {
                 doIsLoggedIn(req, resp);
                 break;
@@ -107,6 +390,18 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
                 doLogIn(req, resp);
                 break;
             }
+            case PATH_LOGIN_EVENTS: {
+                doLoginEvents(req, resp);
+                break;
+            }
+            case PATH_METRICS: {
+                doMetrics(req, resp);
+                break;
+            }
+            case PATH_READY: {
+                doReady(req, resp);
+                break;
+            }
             default: {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 break;
@@ -114,32 +409,80 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
         }
     }
 
-    private void configureClickjackingProtectionExcludeProperty() {
+    private void doAssets(final HttpServletRequest req, final HttpServletResponse resp, final String path) throws IOException {
 
-        // Get the current value of the click-jacking protection exclude property.
-        String value = System.getProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY);
-        LOG.debug("Current value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property is '" + value + "'");
+        // Everything after /assets/ names the file, relative to wherever assets are served from.
+        assets.serve(path.substring(PATH_ASSETS_PREFIX.length()), req, resp);
+    }
 
-        if (StringUtils.isBlank(value)) {
-            // The key or the key's values is missing.  Add our API.
-            System.setProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY, API_PATH);
-            LOG.debug("Setting value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property to '" + API_PATH + "'");
+    /* The HTML content with everything the page would otherwise have to ask for straight after loading - whether the user
+     * is logged in, where to send them if not, and so on - filled in to its template placeholders.  One request instead
+     * of three. */
+    private void doBootstrap(final HttpServletRequest req, final RecordingResponse resp) throws IOException {
+
+        // This response is for one user, at one point in time.  Nobody gets to keep it.
+        resp.addHeader("Cache-Control", "private, no-cache, no-store, must-revalidate");
+        resp.addHeader("Pragma", "no-cache");
+        resp.addHeader("Expires", "0");
+        resp.setContentType("text/html;charset=UTF-8");
+
+        // Let the browser start on the content's subresources while we work out the values.
+        final HtmlContent content = htmlContentCache.get();
+        addPreloadHints(content, resp, true);
+
+        final String contextPath = req.getContextPath();
+        String loginUrl = contextPath + API_PATH + PATH_DO_LOGIN;
+        final String devOpticsReturnUrl = req.getParameter(DEV_OPTICS_RETURN_URL);
+        if (StringUtils.isNotBlank(devOpticsReturnUrl)) {
+            loginUrl += "?" + DEV_OPTICS_RETURN_URL + "=" + URLEncoder.encode(devOpticsReturnUrl, StandardCharsets.UTF_8.name());
+        }
+
+        // In the order of TEMPLATE_NAMES.  The template escapes each one as it writes it.
+        final String[] values = {
+                baseUrl(req),
+                contextPath,
+                String.valueOf(isLoggedInUser(req, resp)),
+                loginUrl,
+                xsrfToken(req) };
+
+        final HtmlTemplate template = content.getTemplate();
+        final int length = template.length(values);
+        resp.setContentLength(length);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        if (asyncBodyWriter.isAsync(req, length)) {
+            // Only worth rendering in to memory if a slow client would otherwise hold on to this thread.
+            asyncBodyWriter.write(req, resp, template.render(values));
         } else {
-            // The key's value exists.  Next we need to check if our API is already in there.  Don't re-add ourselves if we are.
-            final Pattern pattern = Pattern.compile(API_PATH_REGEX);
-            final Matcher matcher = pattern.matcher(value);
-            if (!matcher.find()) {
-                // No match. Add ourselves
-                value += "," + API_PATH;
-                System.setProperty(CLICKJACKING_PROTECTION_EXCLUDE_KEY, value);
-                LOG.debug("Modifying value of " + CLICKJACKING_PROTECTION_EXCLUDE_KEY + " property to '" + value + "'");
-            }
+            template.write(values, resp.getOutputStream());
+        }
+    }
+
+    /* The most recent requests from the request log, for an administrator to see what's been going on without turning on
+     * debug logging. */
+    private void doDebugRecent(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+        resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        if (!administratorCheck.isAdministrator(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
         }
+
+        resp.setContentType("text/plain;charset=UTF-8");
+        requestLog.write(resp.getWriter());
+        resp.setStatus(HttpServletResponse.SC_OK);
     }
 
-    private void doIsLoggedIn(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+    private void doIsLoggedIn(final HttpServletRequest req, final RecordingResponse resp) throws IOException {
+
+        final boolean loggedInUser = isLoggedInUser(req, resp);
+
+        // When to ask again.  Later the busier this node is, and the longer they've been logged out.  Warm-up requests
+        // don't ask, so they can't move the averages on before any real traffic has been seen.
+        if (!Warmup.isSynthetic(req)) {
+            resp.setHeader(POLL_INTERVAL_HEADER, String.valueOf(pollInterval.suggest(req, loggedInUser)));
+        }
 
-        if (!authenticationContext.isLoggedInUser()) {
+        if (!loggedInUser) {
             /* The user is not logged in. */
             resp.getWriter().print("No");
             resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -153,40 +496,89 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
 
     private void doLoadHtml(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
 
-        // Set some cache control headers
+        // Never cache this response.  It's tiny, and it's what tells the browser which version of the content is current.
         resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
         resp.addHeader("Pragma", "no-cache");
         resp.addHeader("Expires", "0");
 
+        // Let the browser start on the content's subresources while it follows the redirect.
+        addPreloadHints(htmlContentCache.get(), resp, true);
+
+        // Send the browser to the versioned URL for the current content, which it can cache forever.
+        redirectToVersionedHtml(req, resp);
+    }
+
+    private void doLoadVersionedHtml(final HttpServletRequest req, final HttpServletResponse resp, final String path) throws IOException {
+
+        final HtmlContent content = htmlContentCache.get();
+        final String hash = path.substring(PATH_LOAD_HTML_VERSIONED_PREFIX.length(), path.length() - PATH_LOAD_HTML_VERSIONED_SUFFIX.length());
+
+        // Pick the representation of the cached content the client can take.
+        final HtmlContent.Variant variant = content.select(req.getHeader("Accept-Encoding"));
+        resp.addHeader("Vary", "Accept-Encoding");
+
+        if (hash.equals(content.getHash())) {
+            // The content at this URL never changes, so the browser can keep it for as long as it likes.
+            resp.addHeader("Cache-Control", "public, max-age=31536000, immutable");
+            resp.addHeader("ETag", variant.getEtag());
+
+            if (HtmlContent.matches(req.getHeader("If-None-Match"), variant.getEtag())) {
+                /* The browser's copy is still current. */
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        } else {
+            /* Someone's holding on to a link to an old (or made-up) version, or mid-upgrade a node with other content
+             * made the link.  Serve them the current content, but don't let it be cached under this URL.  Redirecting
+             * instead could bounce the browser between nodes that each think the other's hash is the stale one. */
+            resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+            resp.addHeader("Pragma", "no-cache");
+            resp.addHeader("Expires", "0");
+        }
+
+        // The content's already to hand, so there's nothing to gain from early hints.
+        addPreloadHints(content, resp, false);
+
         // Load the HTML content in to the response
-        final byte[] byteArray = htmlContentProvider.getContent();
-        resp.getOutputStream().write(byteArray);
+        if (variant.getContentEncoding() != null) {
+            resp.addHeader("Content-Encoding", variant.getContentEncoding());
+        }
+        final byte[] byteArray = variant.getBytes();
+        resp.setContentLength(byteArray.length);
         resp.setStatus(HttpServletResponse.SC_OK);
+        asyncBodyWriter.write(req, resp, byteArray);
     }
 
-    private void doLogIn(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+    private void doLogIn(final HttpServletRequest req, final RecordingResponse resp) throws IOException {
 
         // Expecting a URL like {jira host}/plugins/servlet/devoptics/do-login?devOpticsReturnUrl=https://devoptics.cloudbees.com/u/
 
-        if (!authenticationContext.isLoggedInUser()) {
+        if (!isLoggedInUser(req, resp)) {
 
             /* The user is not logged in. */
 
             // Capture the value of the devOpticsReturnUrl query param so we know where to redirect back to.
             final String devOpticsReturnUrl = req.getParameter(DEV_OPTICS_RETURN_URL);
-            if (StringUtils.isNotBlank(devOpticsReturnUrl)) {
-                req.getSession().setAttribute(DEV_OPTICS_RETURN_URL, devOpticsReturnUrl);
-            } else {
+            if (StringUtils.isBlank(devOpticsReturnUrl)) {
                 // Didn't get a devOpticsReturnUrl query param.  Bad request.
                 resp.getWriter().println("Missing " + DEV_OPTICS_RETURN_URL + " query parameter");
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 return;
             }
 
+            String returnUrl = req.getRequestURI();
+            if (returnUrlTokensEnabled) {
+                // Carry the devOpticsReturnUrl through the login in a signed token, so we don't need a session to hold it.
+                returnUrl += "?" + DEV_OPTICS_RETURN_TOKEN + "=" + returnUrlTokens.create(devOpticsReturnUrl);
+            } else {
+                req.getSession().setAttribute(DEV_OPTICS_RETURN_URL, devOpticsReturnUrl);
+            }
+
+            // The user is about to log in, so whatever we've cached for their session is about to be stale.
+            authenticationContext.invalidate(req);
+
             // Redirect to Jira's login, requesting to come back here again on successful login.
-            final String returnUrl = req.getRequestURI();
             final String redirectTo = "/login.jsp?os_destination=" + URLEncoder.encode(returnUrl, StandardCharsets.UTF_8.name());
-            LOG.debug("Redirecting to " + redirectTo);
             resp.sendRedirect(redirectTo);
 
         } else {
@@ -194,9 +586,22 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
             /* The user is logged in. */
 
             // Redirect to wherever we were told to go in the devOpticsReturnUrl query param from the initial request.
-            final String devOpticsReturnUrl = (String) req.getSession().getAttribute(DEV_OPTICS_RETURN_URL);
+            final String devOpticsReturnToken = req.getParameter(DEV_OPTICS_RETURN_TOKEN);
+            if (StringUtils.isNotBlank(devOpticsReturnToken)) {
+                final String devOpticsReturnUrl = returnUrlTokens.verify(devOpticsReturnToken);
+                if (devOpticsReturnUrl != null) {
+                    resp.sendRedirect(devOpticsReturnUrl);
+                } else {
+                    resp.getWriter().println("Invalid or expired " + DEV_OPTICS_RETURN_TOKEN + " query parameter");
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                }
+                return;
+            }
+
+            // No token, so fall back to the session.  In token mode, don't create a session just to find it empty.
+            final HttpSession session = returnUrlTokensEnabled ? req.getSession(false) : req.getSession();
+            final String devOpticsReturnUrl = session == null ? null : (String) session.getAttribute(DEV_OPTICS_RETURN_URL);
             if (StringUtils.isNotBlank(devOpticsReturnUrl)) {
-                LOG.debug("Redirecting to " + devOpticsReturnUrl);
                 resp.sendRedirect(devOpticsReturnUrl);
             } else {
                 resp.getWriter().println("Did not find the " + DEV_OPTICS_RETURN_URL + " session attribute");
@@ -204,4 +609,156 @@ public class DevOpticsJIRAServerPluginServlet extends HttpServlet {
             }
         }
     }
-}
\ No newline at end of file
+
+    private void doLoginEvents(final HttpServletRequest req, final RecordingResponse resp) throws IOException {
+
+        // Stream the user's logged-in state, starting with how it is right now.
+        loginEventStream.open(req, resp, isLoggedInUser(req, resp));
+    }
+
+    private void doMetrics(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+        resp.setContentType(PrometheusWriter.CONTENT_TYPE);
+        resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+
+        final PrometheusWriter writer = new PrometheusWriter(resp.getWriter());
+        requestMetrics.write(writer);
+        writer.header("devoptics_auth_cache_hits_total", "counter", "Logged-in checks answered from the cache.")
+                .sample("devoptics_auth_cache_hits_total", authenticationContext.getHits());
+        writer.header("devoptics_auth_cache_misses_total", "counter", "Logged-in checks that had to ask Jira.")
+                .sample("devoptics_auth_cache_misses_total", authenticationContext.getMisses());
+        writer.header("devoptics_auth_cache_evictions_total", "counter", "Logged-in cache entries evicted to stay within the size limit.")
+                .sample("devoptics_auth_cache_evictions_total", authenticationContext.getEvictions());
+        writer.header("devoptics_auth_cache_size", "gauge", "Sessions currently in the logged-in cache.")
+                .sample("devoptics_auth_cache_size", authenticationContext.size());
+        pollInterval.write(writer);
+        rateLimiter.write(writer);
+        asyncBodyWriter.write(writer);
+        writer.header("devoptics_login_event_streams", "gauge", "Open /login-events connections.")
+                .sample("devoptics_login_event_streams", loginEventStream.getOpenConnections());
+        warmup.write(writer);
+        writer.header("devoptics_request_log_dropped_total", "counter", "Requests left out of the request log after losing a race for their slot.")
+                .sample("devoptics_request_log_dropped_total", requestLog.getDropped());
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    /* Whether the servlet has started up and is ready for requests, e.g. for a load balancer to check before sending a
+     * node traffic.  Lists how long each step of starting up took either way. */
+    private void doReady(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+        resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        resp.setContentType("text/plain;charset=UTF-8");
+
+        final boolean ready = warmup.isReady();
+        final PrintWriter writer = resp.getWriter();
+        writer.println(ready ? "Ready" : "Not ready");
+        for (final Warmup.Timing timing : warmup.getTimings()) {
+            // Just whether a step failed.  Why is in the log.
+            writer.println(timing.getName() + "\t" + timing.getNanos() / 1e6 + "\t" + (timing.getFailure() == null ? "ok" : "failed"));
+        }
+        resp.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /* Hint at the content's subresources in a Link header, so the browser can fetch them alongside the content.  If
+     * earlyHints, also send them ahead of the response in a 103 Early Hints, where the container can. */
+    private static void addPreloadHints(final HtmlContent content, final HttpServletResponse resp, final boolean earlyHints) {
+
+        final String linkHeader = content.getLinkHeader();
+        if (linkHeader == null) {
+            return;
+        }
+        resp.addHeader("Link", linkHeader);
+        if (earlyHints) {
+            PreloadHints.sendEarlyHints(resp);
+        }
+    }
+
+    /* The URL Jira was reached at for this request, e.g. https://jira.example.com/jira */
+    private static String baseUrl(final HttpServletRequest req) {
+
+        final String scheme = req.getScheme();
+        final int port = req.getServerPort();
+        final boolean defaultPort = port <= 0 || ("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443);
+        return scheme + "://" + req.getServerName() + (defaultPort ? "" : ":" + port) + req.getContextPath();
+    }
+
+    /* Who's making the request, for rate limiting.  Their session if they have one, otherwise where they're coming from. */
+    private static String client(final HttpServletRequest req) {
+
+        final HttpSession session = req.getSession(false);
+        final String sessionId = session == null ? null : session.getId();
+        if (sessionId != null) {
+            return sessionId;
+        }
+        final String remoteAddr = req.getRemoteAddr();
+        return remoteAddr == null ? "" : remoteAddr;
+    }
+
+    /* Whether the request's user is logged in, noting the answer for the request log. */
+    private boolean isLoggedInUser(final HttpServletRequest req, final RecordingResponse resp) {
+
+        final boolean loggedInUser = authenticationContext.isLoggedInUser(req);
+        resp.recordLoggedInUser(loggedInUser);
+        return loggedInUser;
+    }
+
+    private void redirectToVersionedHtml(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+        // Relative, so it resolves against wherever Jira has us mounted.  Keep any query string the page was loaded with.
+        final String queryString = req.getQueryString();
+        final String versioned = PATH_LOAD_HTML_VERSIONED_PREFIX.substring(1) + htmlContentCache.get().getHash() + PATH_LOAD_HTML_VERSIONED_SUFFIX;
+        resp.sendRedirect(StringUtils.isBlank(queryString) ? versioned : versioned + "?" + queryString);
+    }
+
+    /* Work out which route a path belongs to.  Anything we don't serve, including a blank path, is lumped together as
+     * ROUTE_NOT_FOUND so the metrics for it don't grow with every odd path requested. */
+    private static String route(final String path) {
+
+        if (StringUtils.isBlank(path)) {
+            return ROUTE_NOT_FOUND;
+        }
+
+        switch (path) {
+            case PATH_BOOTSTRAP:
+            case PATH_DEBUG_RECENT:
+            case PATH_DO_LOGIN:
+            case PATH_IS_LOGGED_IN:
+            case PATH_LOAD_HTML:
+            case PATH_LOGIN_EVENTS:
+            case PATH_METRICS:
+            case PATH_READY:
+                return path;
+            default:
+                if (path.startsWith(PATH_ASSETS_PREFIX)) {
+                    return ROUTE_ASSETS;
+                }
+                if (path.startsWith(PATH_LOAD_HTML_VERSIONED_PREFIX) && path.endsWith(PATH_LOAD_HTML_VERSIONED_SUFFIX)
+                        && path.length() > PATH_LOAD_HTML.length()) {
+                    return ROUTE_LOAD_HTML_VERSIONED;
+                }
+                return ROUTE_NOT_FOUND;
+        }
+    }
+
+    /* Put a synthetic request to the route through its handler a number of times, as one step of the warm-up. */
+    private void warmUpHandler(final String route, final String acceptEncoding, final int iterations) {
+
+        warmup.run(acceptEncoding == null ? route : route + " (" + acceptEncoding + ")", false, () -> {
+            // The versioned content's path has the hash in it, which we only know once the content has loaded.
+            final String path = ROUTE_LOAD_HTML_VERSIONED.equals(route)
+                    ? PATH_LOAD_HTML_VERSIONED_PREFIX + htmlContentCache.get().getHash() + PATH_LOAD_HTML_VERSIONED_SUFFIX
+                    : route;
+            final HttpServletRequest req = Warmup.request(path, acceptEncoding);
+            final HttpServletResponse resp = Warmup.response();
+            for (int i = 0; i < iterations; i++) {
+                dispatch(route(path), path, req, new RecordingResponse(resp));
+            }
+        });
+    }
+
+    /* The user's XSRF token.  Jira can't make one for a warm-up request, as there's no real request behind it, so that
+     * gets a stand-in. */
+    private String xsrfToken(final HttpServletRequest req) {
+        return Warmup.isSynthetic(req) ? WARMUP_XSRF_TOKEN : xsrfTokenProvider.getToken(req);
+    }
+}
@@ -0,0 +1,57 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.AuthenticationContext;
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.HtmlContentProvider;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.log4j.Logger;
+
+/* Java Flight Recorder events for what the servlet does, so that in a recording of Jira it shows up as more than
+ * anonymous servlet frames, and its latency can be lined up with GC pauses and lock contention over the same period.
+ *
+ * jdk.jfr is only there on Java 11 and later (and 8u262 and later), and even then Jira's OSGi container may not let
+ * the plugin see it.  So the event classes, in JfrEvents, are only touched once we know they'll load, and otherwise
+ * every event is a no-op.  Where they do load, each event checks JFR's own settings first, so with no recording running
+ * they cost next to nothing. */
+final class FlightRecorder {
+
+    /* A request being handled. */
+    static interface Request {
+        void finish(HttpServletRequest req, String route, int status, long declaredContentLength);
+    }
+
+    private static final boolean AVAILABLE = isAvailable();
+    private static final Request NO_REQUEST = (req, route, status, declaredContentLength) -> {
+        // Nothing to record
+    };
+
+    private FlightRecorder() {
+    }
+
+    /* Start timing a request.  Finish it once it's been handled. */
+    static Request request(final HttpServletRequest req) {
+        return AVAILABLE ? JfrEvents.request(req, NO_REQUEST) : NO_REQUEST;
+    }
+
+    /* The authentication context, with an event for each time it's asked. */
+    static AuthenticationContext timed(final AuthenticationContext authenticationContext) {
+        return AVAILABLE ? JfrEvents.timed(authenticationContext) : authenticationContext;
+    }
+
+    /* The content provider, with an event for each time the content's loaded. */
+    static HtmlContentProvider timed(final HtmlContentProvider htmlContentProvider) {
+        return AVAILABLE ? JfrEvents.timed(htmlContentProvider) : htmlContentProvider;
+    }
+
+    private static boolean isAvailable() {
+
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorder.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            Logger.getLogger(FlightRecorder.class).debug("Java Flight Recorder isn't available, so no events will be recorded");
+            return false;
+        }
+    }
+}
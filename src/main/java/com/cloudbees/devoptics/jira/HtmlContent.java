@@ -0,0 +1,186 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/* An immutable, in-memory copy of the HTML content, along with everything derived from it that we'd otherwise
+ * recompute per request: the compiled template, a gzip'd copy of the static bytes, a strong ETag for each
+ * representation and the Link header hinting at its subresources.
+ *
+ * The static bytes are the template with every value left empty, which is what's served to anyone who doesn't ask for
+ * the values to be filled in. */
+final class HtmlContent {
+
+    /* One representation of the content, as it goes out on the wire. */
+    static final class Variant {
+
+        private final byte[] bytes;
+        private final String contentEncoding;
+        private final String etag;
+
+        private Variant(final byte[] bytes, final String contentEncoding, final String etag) {
+
+            this.bytes = bytes;
+            this.contentEncoding = contentEncoding;
+            this.etag = etag;
+        }
+
+        /* The bytes to write.  Shared between requests, so must never be modified. */
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        /* The value for the Content-Encoding header, or null for the identity encoding. */
+        String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final String ENCODING_GZIP = "gzip";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /* How many bytes of the SHA-256 digest to use for the content hash.  64 bits is plenty to tell versions apart. */
+    private static final int HASH_BYTES = 8;
+
+    private final String hash;
+    private final Variant gzip;
+    private final Variant identity;
+    private final String linkHeader;
+    private final HtmlTemplate template;
+
+    /* The template names are the values the caller can fill in.  See HtmlTemplate. */
+    HtmlContent(final byte[] content, final String... templateNames) throws IOException {
+
+        this.template = new HtmlTemplate(content, templateNames);
+        final byte[] bytes = template.render(new String[templateNames.length]);
+        this.hash = hash(bytes);
+        this.identity = new Variant(bytes, null, "\"" + hash + "\"");
+
+        final byte[] gzipped = gzip(bytes);
+        // Only bother offering the gzip variant if it actually saves us something.
+        this.gzip = gzipped.length < bytes.length ? new Variant(gzipped, ENCODING_GZIP, "\"" + hash + "-" + ENCODING_GZIP + "\"") : null;
+
+        this.linkHeader = PreloadHints.linkHeader(new String(content, StandardCharsets.UTF_8));
+    }
+
+    /* A short hex hash of the (uncompressed) content.  Changes whenever the content does. */
+    String getHash() {
+        return hash;
+    }
+
+    Variant getIdentity() {
+        return identity;
+    }
+
+    /* The value for a Link header preloading the content's scripts and styles, or null if it hasn't got any. */
+    String getLinkHeader() {
+        return linkHeader;
+    }
+
+    HtmlTemplate getTemplate() {
+        return template;
+    }
+
+    /* Pick the best variant the client says it can accept, based on the value of its Accept-Encoding header. */
+    Variant select(final String acceptEncoding) {
+
+        if (gzip != null && accepts(acceptEncoding, ENCODING_GZIP)) {
+            return gzip;
+        }
+        return identity;
+    }
+
+    /* Does the value of an If-None-Match header match the given ETag?  Uses the weak comparison, as per RFC 7232. */
+    static boolean matches(final String ifNoneMatch, final String etag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (final String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Does an Accept-Encoding header value allow the given coding?  A coding is accepted if it's listed (or covered by
+     * "*") with a non-zero q-value. */
+    static boolean accepts(final String acceptEncoding, final String coding) {
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Boolean wildcard = null;
+        for (final String element : acceptEncoding.split(",")) {
+            final String[] parts = element.split(";");
+            final String name = parts[0].trim();
+            final boolean allowed = qValue(parts) > 0;
+            if (name.equalsIgnoreCase(coding)) {
+                return allowed;
+            }
+            if ("*".equals(name)) {
+                wildcard = allowed;
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static double qValue(final String[] parts) {
+
+        for (int i = 1; i < parts.length; i++) {
+            final String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static byte[] gzip(final byte[] bytes) throws IOException {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length);
+        try (GZIPOutputStream gzos = new GZIPOutputStream(baos)) {
+            gzos.write(bytes);
+        }
+        return baos.toByteArray();
+    }
+
+    private static String hash(final byte[] bytes) {
+
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            // Every JRE is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+
+        final char[] chars = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
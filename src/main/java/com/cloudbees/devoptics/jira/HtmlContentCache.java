@@ -0,0 +1,41 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.HtmlContentProvider;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+/* Loads the HTML content from an HtmlContentProvider the first time it's asked for, then hangs on to it.
+ * The content only changes when the plugin is redeployed, at which point we get a new servlet and a new cache. */
+class HtmlContentCache {
+
+    private static final Logger LOG = Logger.getLogger(HtmlContentCache.class);
+
+    private final HtmlContentProvider htmlContentProvider;
+    private volatile HtmlContent content;
+    private final String[] templateNames;
+
+    HtmlContentCache(final HtmlContentProvider htmlContentProvider, final String... templateNames) {
+
+        this.htmlContentProvider = htmlContentProvider;
+        this.templateNames = templateNames;
+    }
+
+    HtmlContent get() throws IOException {
+
+        HtmlContent result = content;
+        if (result == null) {
+            synchronized (this) {
+                result = content;
+                if (result == null) {
+                    // Not loaded yet.  If the provider throws we don't cache anything, so the next request tries again.
+                    result = new HtmlContent(htmlContentProvider.getContent(), templateNames);
+                    LOG.debug("Cached HTML content with hash " + result.getHash());
+                    content = result;
+                }
+            }
+        }
+        return result;
+    }
+}
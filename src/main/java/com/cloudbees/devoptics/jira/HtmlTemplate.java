@@ -0,0 +1,246 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/* The HTML content, compiled once in to a list of static byte segments with placeholders between them, so values that
+ * differ per request can be written straight to the response without touching the rest of the content.
+ *
+ * A placeholder is {{name}} for a value going in to HTML text or a quoted attribute, or {{js:name}} for one going in to
+ * a quoted JavaScript string inside a <script>.  Names are looked up when the template is compiled, against the list the
+ * caller says it can supply, and values are then passed in that same order.  A {{ that doesn't start a placeholder with
+ * a name on the list is left in the content as it is. */
+final class HtmlTemplate {
+
+    /* How a value is escaped on the way out.  Everything outside of printable ASCII is escaped too, so the bytes written
+     * are the same whatever the charset of the page, and we never have to encode UTF-8 ourselves. */
+    enum Escape {
+        HTML, JS
+    }
+
+    /* A run of static content, followed by the placeholder (if any) that comes after it. */
+    private static final class Segment {
+
+        private final byte[] bytes;
+        private final Escape escape;
+        private final int value;
+
+        private Segment(final byte[] bytes, final int value, final Escape escape) {
+
+            this.bytes = bytes;
+            this.value = value;
+            this.escape = escape;
+        }
+    }
+
+    private static final byte[] CLOSE = "}}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final String JS_PREFIX = "js:";
+    private static final Logger LOG = Logger.getLogger(HtmlTemplate.class);
+    /* The most bytes one code point can escape to: a surrogate pair of JavaScript escapes, or an HTML reference with six
+     * hex digits. */
+    private static final int MAX_ESCAPED_LENGTH = 12;
+    /* No value index, for the last segment. */
+    private static final int NONE = -1;
+    private static final byte[] OPEN = "{{".getBytes(StandardCharsets.US_ASCII);
+
+    private final int placeholders;
+    private final Segment[] segments;
+    private final int staticLength;
+
+    HtmlTemplate(final byte[] content, final String... names) {
+
+        final List<Segment> parsed = new ArrayList<>();
+        final List<String> nameList = Arrays.asList(names);
+        int count = 0;
+        int length = 0;
+        int start = 0;
+        int open = indexOf(content, OPEN, 0);
+        while (open >= 0) {
+            final int close = indexOf(content, CLOSE, open + OPEN.length);
+            if (close < 0) {
+                break;
+            }
+
+            String name = new String(content, open + OPEN.length, close - open - OPEN.length, StandardCharsets.US_ASCII).trim();
+            Escape escape = Escape.HTML;
+            if (name.startsWith(JS_PREFIX)) {
+                name = name.substring(JS_PREFIX.length()).trim();
+                escape = Escape.JS;
+            }
+
+            final int value = nameList.indexOf(name);
+            if (value < 0) {
+                // Not one of ours.  Leave the {{ be, and carry on looking from just after it, as what looked like the
+                // name may have a real placeholder in it.
+                LOG.debug("Ignoring unknown template placeholder " + name);
+                open = indexOf(content, OPEN, open + 1);
+                continue;
+            }
+
+            parsed.add(new Segment(Arrays.copyOfRange(content, start, open), value, escape));
+            length += open - start;
+            count++;
+            start = close + CLOSE.length;
+            open = indexOf(content, OPEN, start);
+        }
+
+        // If there's nothing to fill in, the content is its own single segment, so it can be shared as is.
+        final byte[] rest = start == 0 ? content : Arrays.copyOfRange(content, start, content.length);
+        parsed.add(new Segment(rest, NONE, null));
+        length += rest.length;
+
+        this.segments = parsed.toArray(new Segment[parsed.size()]);
+        this.placeholders = count;
+        this.staticLength = length;
+    }
+
+    boolean hasPlaceholders() {
+        return placeholders > 0;
+    }
+
+    /* The number of bytes write() would write for the given values. */
+    int length(final String[] values) {
+
+        int length = staticLength;
+        for (final Segment segment : segments) {
+            if (segment.value != NONE) {
+                length += escapedLength(values[segment.value], segment.escape);
+            }
+        }
+        return length;
+    }
+
+    /* The content with the given values filled in, as a byte array.  For content that doesn't vary per request. */
+    byte[] render(final String[] values) throws IOException {
+
+        if (!hasPlaceholders()) {
+            return segments[0].bytes;
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(length(values));
+        write(values, baos);
+        return baos.toByteArray();
+    }
+
+    /* Write the content to the stream, with the given values (in the order of the names the template was compiled with)
+     * escaped and filled in.  A null value is written as nothing. */
+    void write(final String[] values, final OutputStream outputStream) throws IOException {
+
+        // Escaped values are gathered up in a small buffer rather than written to the stream a byte at a time.
+        final byte[] buffer = placeholders == 0 ? null : new byte[256];
+        for (final Segment segment : segments) {
+            outputStream.write(segment.bytes);
+            if (segment.value != NONE) {
+                writeEscaped(values[segment.value], segment.escape, buffer, outputStream);
+            }
+        }
+    }
+
+    private static int escapedLength(final String value, final Escape escape) {
+
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); ) {
+            final int codePoint = value.codePointAt(i);
+            length += escape(codePoint, escape, null, 0);
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    /* Put the escaped form of a code point in to the buffer at the given position, returning how many bytes it took.
+     * With no buffer, just says how many bytes it would take.  Never more than MAX_ESCAPED_LENGTH. */
+    private static int escape(final int codePoint, final Escape escape, final byte[] buffer, final int position) {
+
+        final boolean safe = codePoint >= 0x20 && codePoint < 0x7f && codePoint != '<' && codePoint != '>' && codePoint != '&'
+                && codePoint != '"' && codePoint != '\'' && (escape == Escape.HTML || (codePoint != '\\' && codePoint != '/'));
+        if (safe) {
+            if (buffer != null) {
+                buffer[position] = (byte) codePoint;
+            }
+            return 1;
+        }
+
+        if (escape == Escape.JS) {
+            // JavaScript only has four hex digit escapes, so anything bigger goes as a surrogate pair.
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                return writeJsEscape(Character.highSurrogate(codePoint), buffer, position)
+                        + writeJsEscape(Character.lowSurrogate(codePoint), buffer, position + 6);
+            }
+            return writeJsEscape(codePoint, buffer, position);
+        }
+
+        // A hex character reference, trimmed to the digits needed.
+        int digits = 2;
+        while (codePoint >>> (digits * 4) != 0) {
+            digits++;
+        }
+        if (buffer != null) {
+            buffer[position] = '&';
+            buffer[position + 1] = '#';
+            buffer[position + 2] = 'x';
+            writeHex(codePoint, digits, buffer, position + 3);
+            buffer[position + 3 + digits] = ';';
+        }
+        return digits + 4;
+    }
+
+    private static int indexOf(final byte[] bytes, final byte[] target, final int from) {
+
+        outer:
+        for (int i = from; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static void writeEscaped(final String value, final Escape escape, final byte[] buffer, final OutputStream outputStream)
+            throws IOException {
+
+        if (value == null) {
+            return;
+        }
+        int position = 0;
+        for (int i = 0; i < value.length(); ) {
+            if (position > buffer.length - MAX_ESCAPED_LENGTH) {
+                outputStream.write(buffer, 0, position);
+                position = 0;
+            }
+            final int codePoint = value.codePointAt(i);
+            position += escape(codePoint, escape, buffer, position);
+            i += Character.charCount(codePoint);
+        }
+        outputStream.write(buffer, 0, position);
+    }
+
+    private static void writeHex(final int value, final int digits, final byte[] buffer, final int position) {
+
+        for (int i = 0; i < digits; i++) {
+            buffer[position + i] = HEX[(value >> ((digits - 1 - i) * 4)) & 0xf];
+        }
+    }
+
+    private static int writeJsEscape(final int c, final byte[] buffer, final int position) {
+
+        if (buffer != null) {
+            buffer[position] = '\\';
+            buffer[position + 1] = 'u';
+            writeHex(c, 4, buffer, position + 2);
+        }
+        return 6;
+    }
+}
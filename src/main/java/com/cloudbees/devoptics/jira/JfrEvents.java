@@ -0,0 +1,123 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.AuthenticationContext;
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.HtmlContentProvider;
+
+import javax.servlet.http.HttpServletRequest;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/* The JFR event types behind FlightRecorder.  Only loaded once FlightRecorder knows jdk.jfr is there.
+ *
+ * Events are only filled in if JFR says they'll be committed, so an enabled event below its threshold costs no more
+ * than a disabled one.  None of them take a stack trace: the point is to see when the plugin was busy, and its stack
+ * is always the same. */
+final class JfrEvents {
+
+    @Name("com.cloudbees.devoptics.jira.Authentication")
+    @Label("DevOptics Authentication Lookup")
+    @Category("CloudBees DevOptics")
+    @Description("Asking Jira whether the user making a request is logged in.  Lookups answered from the plugin's cache aren't included.")
+    @StackTrace(false)
+    static final class AuthenticationEvent extends Event {
+
+        @Label("Logged In")
+        private boolean loggedIn;
+    }
+
+    @Name("com.cloudbees.devoptics.jira.ContentLoad")
+    @Label("DevOptics Content Load")
+    @Category("CloudBees DevOptics")
+    @Description("Loading the HTML content the servlet serves.")
+    @StackTrace(false)
+    static final class ContentLoadEvent extends Event {
+
+        @Label("Size")
+        @DataAmount
+        private long size;
+    }
+
+    @Name("com.cloudbees.devoptics.jira.Request")
+    @Label("DevOptics Request")
+    @Category("CloudBees DevOptics")
+    @Description("A request handled by the DevOptics servlet.  Bodies written asynchronously may still be going out once it ends.")
+    @StackTrace(false)
+    static final class RequestEvent extends Event implements FlightRecorder.Request {
+
+        @Label("Declared Content Length")
+        @Description("The Content-Length the response declared, or -1 if it didn't, as with bodies written through a writer and redirects.  Not a count of the bytes sent")
+        @DataAmount
+        private long declaredContentLength;
+        private transient boolean hadSession;
+        @Label("Route")
+        private String route;
+        @Label("Session Created")
+        private boolean sessionCreated;
+        @Label("Status")
+        private int status;
+
+        @Override
+        public void finish(final HttpServletRequest req, final String route, final int status, final long declaredContentLength) {
+
+            end();
+            if (shouldCommit()) {
+                this.route = route;
+                this.status = status;
+                this.declaredContentLength = declaredContentLength;
+                this.sessionCreated = !hadSession && req.getSession(false) != null;
+                commit();
+            }
+        }
+    }
+
+    private JfrEvents() {
+    }
+
+    static FlightRecorder.Request request(final HttpServletRequest req, final FlightRecorder.Request disabled) {
+
+        final RequestEvent event = new RequestEvent();
+        if (!event.isEnabled()) {
+            return disabled;
+        }
+        // Only worth asking if the event's going to want to know whether the request made one.
+        event.hadSession = req.getSession(false) != null;
+        event.begin();
+        return event;
+    }
+
+    static AuthenticationContext timed(final AuthenticationContext authenticationContext) {
+
+        return () -> {
+            final AuthenticationEvent event = new AuthenticationEvent();
+            event.begin();
+            final boolean loggedIn = authenticationContext.isLoggedInUser();
+            event.end();
+            if (event.shouldCommit()) {
+                event.loggedIn = loggedIn;
+                event.commit();
+            }
+            return loggedIn;
+        };
+    }
+
+    static HtmlContentProvider timed(final HtmlContentProvider htmlContentProvider) {
+
+        return () -> {
+            final ContentLoadEvent event = new ContentLoadEvent();
+            event.begin();
+            final byte[] content = htmlContentProvider.getContent();
+            event.end();
+            if (event.shouldCommit()) {
+                event.size = content == null ? 0 : content.length;
+                event.commit();
+            }
+            return content;
+        };
+    }
+}
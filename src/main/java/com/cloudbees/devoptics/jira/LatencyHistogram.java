@@ -0,0 +1,110 @@
+package com.cloudbees.devoptics.jira;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A lock-free latency histogram with log-linear buckets: each power of two of microseconds is split in to 8 buckets, so
+ * any recorded value is reported within 12.5% of its true value.  Recording is a couple of atomic increments and never
+ * allocates, so it's cheap enough to do on every request. */
+final class LatencyHistogram {
+
+    /* log2 of the number of buckets each power of two is split in to. */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* Anything slower than 2^40 microseconds (about 12 days) goes in the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    void record(final long nanos) {
+
+        final long value = nanos < 0 ? 0 : nanos;
+        // Bucketed by whole microseconds rounded up, less one.  So a value of exactly 2^n microseconds is counted as at or
+        // under 2^n, the way a Prometheus bucket's le bound reads, rather than in the bucket above.
+        counts.incrementAndGet(bucketIndex(value == 0 ? 0 : (value - 1) / 1_000L));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /* Cumulative counts, the way a Prometheus histogram reports them: how many recorded values were at or under each power
+     * of two of microseconds from 2^0 to 2^maxExponent, followed by how many there were in all.  Powers of two fall on
+     * bucket boundaries, so each count is exact. */
+    long[] cumulativeCounts(final int maxExponent) {
+
+        final long[] cumulative = new long[maxExponent + 2];
+        long seen = 0;
+        int next = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            while (next <= maxExponent && i == bucketIndex(1L << next)) {
+                cumulative[next++] = seen;
+            }
+            seen += counts.get(i);
+        }
+        while (next <= maxExponent) {
+            cumulative[next++] = seen;
+        }
+        cumulative[maxExponent + 1] = seen;
+        return cumulative;
+    }
+
+    /* The latency, in microseconds, that the given fraction of recorded values were at or below.  Reported as the upper
+     * bound of the bucket the quantile falls in, so it errs on the slow side.  0 if nothing has been recorded yet. */
+    long quantileMicros(final double quantile) {
+
+        long total = 0;
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i) + 1;
+            }
+        }
+        return bucketUpperBound(BUCKETS - 1) + 1;
+    }
+
+    static int bucketIndex(final long micros) {
+
+        if (micros < SUB_BUCKETS) {
+            // The first power-of-two-worth of buckets are exact.
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(final int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
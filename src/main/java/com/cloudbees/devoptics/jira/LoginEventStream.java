@@ -0,0 +1,213 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.SessionAuthenticationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.log4j.Logger;
+
+/* Server-Sent Events stream of a session's logged-in state, so the front end can be told when the user logs in rather
+ * than having to keep asking /is-logged-in.
+ *
+ * Each connection is parked in a Servlet 3 AsyncContext, so it doesn't hold a container thread while idle.  A single
+ * background thread checks the sessions of all open connections, pushes a "login-state" event to any whose state has
+ * changed, and sends a heartbeat comment to any that have been quiet for too long.
+ *
+ * If the container won't let us go async, or there's no session to watch, the client just gets the current state and
+ * a "retry" hint, and EventSource's own reconnect turns that in to polling at the heartbeat interval. */
+class LoginEventStream {
+
+    /* An open stream to one client. */
+    private final class Connection implements AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private long lastWriteNanos;
+        private boolean loggedIn;
+        private final HttpSession session;
+
+        private Connection(final AsyncContext asyncContext, final HttpSession session, final boolean loggedIn) {
+
+            this.asyncContext = asyncContext;
+            this.session = session;
+            this.loggedIn = loggedIn;
+            this.lastWriteNanos = clock.getAsLong();
+        }
+
+        private void close() {
+
+            if (connections.remove(this)) {
+                try {
+                    asyncContext.complete();
+                } catch (final IllegalStateException e) {
+                    // Already completed by the container.
+                }
+            }
+        }
+
+        private void write(final byte[] bytes) throws IOException {
+
+            final OutputStream outputStream = asyncContext.getResponse().getOutputStream();
+            outputStream.write(bytes);
+            outputStream.flush();
+            lastWriteNanos = clock.getAsLong();
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            connections.remove(this);
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            // The client will reconnect by itself.
+            close();
+        }
+    }
+
+    static final String CONTENT_TYPE = "text/event-stream";
+
+    private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final Logger LOG = Logger.getLogger(LoginEventStream.class);
+    private static final byte[] LOGGED_IN = "event: login-state\ndata: Yes\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LOGGED_OUT = "event: login-state\ndata: No\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final long checkMillis;
+    private final LongSupplier clock;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final long heartbeatNanos;
+    private final long maxConnectionMillis;
+    private final byte[] retry;
+    private ScheduledExecutorService scheduler;
+    private final SessionAuthenticationContext sessionAuthenticationContext;
+
+    LoginEventStream(final SessionAuthenticationContext sessionAuthenticationContext, final long heartbeatMillis, final long checkMillis,
+            final long maxConnectionMillis) {
+        this(sessionAuthenticationContext, heartbeatMillis, checkMillis, maxConnectionMillis, System::nanoTime);
+    }
+
+    /* For unit testing */
+    LoginEventStream(final SessionAuthenticationContext sessionAuthenticationContext, final long heartbeatMillis, final long checkMillis,
+            final long maxConnectionMillis, final LongSupplier clock) {
+
+        this.sessionAuthenticationContext = sessionAuthenticationContext;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.checkMillis = checkMillis;
+        this.maxConnectionMillis = maxConnectionMillis;
+        this.clock = clock;
+        this.retry = ("retry: " + heartbeatMillis + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Start streaming to the client, beginning with the current state. */
+    void open(final HttpServletRequest req, final HttpServletResponse resp, final boolean loggedIn) throws IOException {
+
+        resp.setContentType(CONTENT_TYPE);
+        resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        resp.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        resp.setStatus(HttpServletResponse.SC_OK);
+
+        final OutputStream outputStream = resp.getOutputStream();
+        outputStream.write(retry);
+        outputStream.write(loggedIn ? LOGGED_IN : LOGGED_OUT);
+        resp.flushBuffer();
+
+        // Don't create a session just to watch it.
+        final HttpSession session = req.getSession(false);
+        if (session == null || !req.isAsyncSupported()) {
+            return;
+        }
+
+        final AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(maxConnectionMillis);
+        final Connection connection = new Connection(asyncContext, session, loggedIn);
+        asyncContext.addListener(connection);
+        connections.add(connection);
+        startScheduler();
+    }
+
+    int getOpenConnections() {
+        return connections.size();
+    }
+
+    /* Look at every open connection, pushing state changes and heartbeats as needed.  Called periodically by the scheduler. */
+    void check() {
+
+        final long now = clock.getAsLong();
+        for (final Connection connection : connections) {
+            try {
+                boolean loggedIn;
+                boolean invalidated = false;
+                try {
+                    loggedIn = sessionAuthenticationContext.isLoggedIn(connection.session);
+                } catch (final IllegalStateException e) {
+                    // The session has been invalidated, which means they've logged out.  There's nothing left to watch, so
+                    // once they've been told, let them reconnect with whatever session they have now.
+                    loggedIn = false;
+                    invalidated = true;
+                }
+
+                if (loggedIn != connection.loggedIn) {
+                    connection.loggedIn = loggedIn;
+                    connection.write(loggedIn ? LOGGED_IN : LOGGED_OUT);
+                } else if (now - connection.lastWriteNanos >= heartbeatNanos) {
+                    connection.write(HEARTBEAT);
+                }
+                if (invalidated) {
+                    connection.close();
+                }
+            } catch (final IOException | RuntimeException e) {
+                // Most likely the client has gone away.
+                LOG.debug("Closing login event stream: " + e);
+                connection.close();
+            }
+        }
+    }
+
+    /* Close every open connection and stop checking. */
+    synchronized void shutdown() {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        for (final Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private synchronized void startScheduler() {
+
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "devoptics-login-events");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
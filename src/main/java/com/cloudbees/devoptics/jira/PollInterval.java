@@ -0,0 +1,130 @@
+package com.cloudbees.devoptics.jira;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/* Works out how long the front end should wait before asking /is-logged-in again, so that polling backs off on its own
+ * when the node is busy rather than every browser asking at a fixed rate.
+ *
+ * The node's request rate and mean latency are kept as moving averages over the last few seconds, folded in at most
+ * once a second by whichever request happens along.  The interval starts at baseMillis and is scaled up by however far
+ * over its busy rate or busy latency the node is.  It doubles for each answer of "No" in a row to the same session, as
+ * someone who isn't logged in is in no hurry to be told so, up to maxMillis.  Finally it's jittered by up to a fifth
+ * either way, so browsers that started together drift apart instead of polling in waves. */
+class PollInterval {
+
+    private static final double JITTER = 0.2;
+    /* Enough doublings to reach any sensible maxMillis, without overflowing. */
+    private static final int MAX_DOUBLINGS = 16;
+    /* How often requests are folded in to the moving averages. */
+    private static final long TICK_NANOS = 1_000_000_000L;
+    /* How quickly the moving averages forget.  Each second's figures count for about a tenth. */
+    private static final double TIME_CONSTANT_NANOS = 10_000_000_000.0;
+    /* The session attribute holding how many times in a row the session has been told "No". */
+    private static final String UNAUTHENTICATED_POLLS = PollInterval.class.getName() + ".unauthenticatedPolls";
+
+    private final long baseMillis;
+    private final double busyLatencyNanos;
+    private final double busyRequestsPerSecond;
+    private final LongSupplier clock;
+    private final AtomicLong lastTick;
+    private volatile double latencyNanos;
+    private final LongAdder latencySum = new LongAdder();
+    private final long maxMillis;
+    private final DoubleSupplier random;
+    private final LongAdder requests = new LongAdder();
+    private volatile double requestsPerSecond;
+
+    PollInterval(final long baseMillis, final long maxMillis, final double busyRequestsPerSecond, final long busyLatencyMillis) {
+        this(baseMillis, maxMillis, busyRequestsPerSecond, busyLatencyMillis, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    /* For unit testing */
+    PollInterval(final long baseMillis, final long maxMillis, final double busyRequestsPerSecond, final long busyLatencyMillis,
+            final LongSupplier clock, final DoubleSupplier random) {
+
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.busyRequestsPerSecond = busyRequestsPerSecond;
+        this.busyLatencyNanos = busyLatencyMillis * 1_000_000.0;
+        this.clock = clock;
+        this.random = random;
+        this.lastTick = new AtomicLong(clock.getAsLong());
+    }
+
+    /* Count a request the node has handled, on any route. */
+    void record(final long nanos) {
+
+        requests.increment();
+        latencySum.add(nanos);
+    }
+
+    /* How many milliseconds the session should wait before polling again, given the answer it's about to get. */
+    long suggest(final HttpServletRequest req, final boolean loggedIn) {
+
+        final HttpSession session = req.getSession(false);
+        int unauthenticatedPolls = 0;
+        if (session != null) {
+            try {
+                final Object previous = session.getAttribute(UNAUTHENTICATED_POLLS);
+                if (loggedIn) {
+                    // Only touch the session if there's something to clear.
+                    if (previous != null) {
+                        session.removeAttribute(UNAUTHENTICATED_POLLS);
+                    }
+                } else {
+                    unauthenticatedPolls = previous instanceof Integer ? (Integer) previous : 0;
+                    session.setAttribute(UNAUTHENTICATED_POLLS, Math.min(unauthenticatedPolls + 1, MAX_DOUBLINGS));
+                }
+            } catch (final IllegalStateException e) {
+                // The session's been invalidated under us.  Treat it as a fresh one.
+            }
+        }
+        return suggest(unauthenticatedPolls);
+    }
+
+    /* The interval for a session told "No" this many times in a row before now. */
+    long suggest(final int unauthenticatedPolls) {
+
+        tick();
+        final double load = Math.max(1.0, Math.max(requestsPerSecond / busyRequestsPerSecond, latencyNanos / busyLatencyNanos));
+        final double interval = Math.min(maxMillis, baseMillis * load * (1L << Math.min(unauthenticatedPolls, MAX_DOUBLINGS)));
+        final double jittered = interval * (1.0 - JITTER + 2 * JITTER * random.getAsDouble());
+        return Math.min(maxMillis, Math.round(jittered));
+    }
+
+    void write(final PrometheusWriter writer) {
+
+        tick();
+        writer.header("devoptics_request_rate_ewma", "gauge", "Requests per second handled by the DevOptics servlet, as a moving average.")
+                .sample("devoptics_request_rate_ewma", requestsPerSecond);
+        writer.header("devoptics_request_duration_seconds_ewma", "gauge", "Mean time taken by the DevOptics servlet to handle a request, as a moving average.")
+                .sample("devoptics_request_duration_seconds_ewma", latencyNanos / 1e9);
+    }
+
+    /* Fold the requests since the last tick in to the moving averages, if it's time.  Only one caller gets to. */
+    private void tick() {
+
+        final long now = clock.getAsLong();
+        final long last = lastTick.get();
+        final long elapsed = now - last;
+        if (elapsed < TICK_NANOS || !lastTick.compareAndSet(last, now)) {
+            return;
+        }
+
+        final long count = requests.sumThenReset();
+        final long sum = latencySum.sumThenReset();
+        // Weighted by how long it's been, so a quiet spell with no ticks counts for as long as it lasted.
+        final double alpha = 1.0 - Math.exp(-elapsed / TIME_CONSTANT_NANOS);
+        requestsPerSecond += alpha * (count * 1e9 / elapsed - requestsPerSecond);
+        if (count > 0) {
+            latencyNanos += alpha * ((double) sum / count - latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.cloudbees.devoptics.jira;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/* Tells the browser about the subresources the HTML content needs before it has parsed the content to find them, so it
+ * can fetch them in parallel.
+ *
+ * The content is scanned once, when it's loaded, for external scripts, stylesheets and the preload and preconnect hints
+ * it already has, which become a Link header.  Where the container can send a 103 Early Hints response (recent versions
+ * of Tomcat), the header can go out in one of those too, before the real response is ready.  Servlet 3.1 has no API for
+ * that, so it's found by reflection, and does nothing where there isn't one. */
+final class PreloadHints {
+
+    /* Attributes of a tag: name, then an optional value, quoted or not. */
+    private static final Pattern ATTRIBUTE = Pattern.compile("([^\\s\"'>/=]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?");
+    private static final Logger LOG = Logger.getLogger(PreloadHints.class);
+    /* The scheme and host of an absolute or protocol-relative URL. */
+    private static final Pattern ORIGIN = Pattern.compile("^((?:https?:)?//[^/?#]+)", Pattern.CASE_INSENSITIVE);
+    /* The sendEarlyHints() method of each response class, or null if it hasn't got one. */
+    private static final ClassValue<Method> SEND_EARLY_HINTS = new ClassValue<Method>() {
+
+        @Override
+        protected Method computeValue(final Class<?> type) {
+
+            try {
+                return type.getMethod("sendEarlyHints");
+            } catch (final NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+    /* Comments and script bodies are skipped over whole, so nothing that only looks like a tag inside them counts. */
+    private static final Pattern TAG = Pattern.compile("<!--.*?-->|<script\\b([^>]*)>.*?</script\\s*>|<link\\b([^>]*)>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /* Anything that could break out of the <...> in a Link header, or the header itself. */
+    private static final Pattern UNSAFE_URL = Pattern.compile("[^\\x21-\\x7e]|[<>,\"]");
+
+    private PreloadHints() {
+    }
+
+    /* The Link header value hinting at the content's subresources, or null if it hasn't got any. */
+    static String linkHeader(final String html) {
+
+        final Set<String> links = new LinkedHashSet<>();
+        final Set<String> preconnects = new LinkedHashSet<>();
+        final Matcher tag = TAG.matcher(html);
+        while (tag.find()) {
+            if (tag.group(1) != null) {
+                script(attributes(tag.group(1)), links, preconnects);
+            } else if (tag.group(2) != null) {
+                link(attributes(tag.group(2)), links, preconnects);
+            }
+        }
+
+        // Connections first, as they take longest to get going.
+        final Set<String> all = new LinkedHashSet<>();
+        for (final String origin : preconnects) {
+            all.add("<" + origin + ">; rel=preconnect");
+        }
+        all.addAll(links);
+        return all.isEmpty() ? null : String.join(", ", all);
+    }
+
+    /* Send a 103 Early Hints response with the headers set so far, if the container can.  Returns whether it did. */
+    static boolean sendEarlyHints(final HttpServletResponse resp) {
+
+        // Whoever wraps the response, the container's own is underneath.
+        ServletResponse response = resp;
+        while (true) {
+            final Method method = SEND_EARLY_HINTS.get(response.getClass());
+            if (method != null) {
+                try {
+                    method.invoke(response);
+                    return true;
+                } catch (final IllegalAccessException | InvocationTargetException e) {
+                    LOG.debug("Could not send early hints", e);
+                    return false;
+                }
+            }
+            if (!(response instanceof ServletResponseWrapper)) {
+                return false;
+            }
+            response = ((ServletResponseWrapper) response).getResponse();
+        }
+    }
+
+    /* The tag's attributes by lowercased name.  Valueless attributes are "".  Like a browser, the first of any repeats wins. */
+    private static Map<String, String> attributes(final String tag) {
+
+        final Map<String, String> attributes = new HashMap<>();
+        final Matcher attribute = ATTRIBUTE.matcher(tag);
+        while (attribute.find()) {
+            String value = attribute.group(2);
+            if (value == null) {
+                value = attribute.group(3);
+            }
+            if (value == null) {
+                value = attribute.group(4);
+            }
+            attributes.putIfAbsent(attribute.group(1).toLowerCase(Locale.ROOT), value == null ? "" : value.trim());
+        }
+        return attributes;
+    }
+
+    /* A URL we can put in a Link header: static (not a template placeholder), fetchable and nothing that needs escaping. */
+    private static boolean isHintable(final String url) {
+
+        if (url == null || url.isEmpty() || url.contains("{{") || UNSAFE_URL.matcher(url).find()) {
+            return false;
+        }
+        final String lower = url.toLowerCase(Locale.ROOT);
+        return !lower.startsWith("data:") && !lower.startsWith("javascript:") && !lower.startsWith("blob:");
+    }
+
+    private static void link(final Map<String, String> attributes, final Set<String> links, final Set<String> preconnects) {
+
+        final String href = attributes.get("href");
+        final String rel = attributes.get("rel");
+        if (!isHintable(href) || rel == null) {
+            return;
+        }
+
+        for (final String type : rel.toLowerCase(Locale.ROOT).split("\\s+")) {
+            switch (type) {
+                case "stylesheet": {
+                    preload(href, "preload; as=style", attributes, links, preconnects);
+                    break;
+                }
+                case "preload": {
+                    final String as = attributes.get("as");
+                    if (as != null && as.matches("[a-z]+")) {
+                        final String mimeType = attributes.get("type");
+                        preload(href, "preload; as=" + as + (mimeType != null && mimeType.matches("[\\w.+-]+/[\\w.+-]+") ? "; type=" + mimeType : ""),
+                                attributes, links, preconnects);
+                    }
+                    break;
+                }
+                case "modulepreload": {
+                    preload(href, "modulepreload", attributes, links, preconnects);
+                    break;
+                }
+                case "preconnect":
+                case "dns-prefetch": {
+                    final Matcher origin = ORIGIN.matcher(href);
+                    if (origin.find()) {
+                        preconnects.add(origin.group(1));
+                    }
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void preload(final String url, final String rel, final Map<String, String> attributes, final Set<String> links,
+            final Set<String> preconnects) {
+
+        // Cross-origin requests have to be made the same way the page will make them, or the browser won't use the preload.
+        final String crossorigin = attributes.get("crossorigin");
+        links.add("<" + url + ">; rel=" + rel
+                + (crossorigin == null ? "" : "use-credentials".equalsIgnoreCase(crossorigin) ? "; crossorigin=use-credentials" : "; crossorigin"));
+
+        final Matcher origin = ORIGIN.matcher(url);
+        if (origin.find()) {
+            preconnects.add(origin.group(1));
+        }
+    }
+
+    private static void script(final Map<String, String> attributes, final Set<String> links, final Set<String> preconnects) {
+
+        final String src = attributes.get("src");
+        if (!isHintable(src)) {
+            return;
+        }
+        final String type = attributes.get("type");
+        preload(src, "module".equalsIgnoreCase(type) ? "modulepreload" : "preload; as=script", attributes, links, preconnects);
+    }
+}
@@ -0,0 +1,83 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.PrintWriter;
+
+/* Writes metrics in the Prometheus text exposition format (version 0.0.4).
+ * Just enough of the format for what we expose: HELP/TYPE lines and samples with up to two labels. */
+final class PrometheusWriter {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final PrintWriter writer;
+
+    PrometheusWriter(final PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    PrometheusWriter header(final String name, final String type, final String help) {
+
+        writer.print("# HELP ");
+        writer.print(name);
+        writer.print(' ');
+        writer.println(help);
+        writer.print("# TYPE ");
+        writer.print(name);
+        writer.print(' ');
+        writer.println(type);
+        return this;
+    }
+
+    PrometheusWriter sample(final String name, final double value) {
+        return sample(name, null, null, null, null, value);
+    }
+
+    PrometheusWriter sample(final String name, final String label, final String labelValue, final double value) {
+        return sample(name, label, labelValue, null, null, value);
+    }
+
+    PrometheusWriter sample(final String name, final String label1, final String labelValue1, final String label2, final String labelValue2,
+            final double value) {
+
+        writer.print(name);
+        if (label1 != null) {
+            writer.print('{');
+            label(label1, labelValue1);
+            if (label2 != null) {
+                writer.print(',');
+                label(label2, labelValue2);
+            }
+            writer.print('}');
+        }
+        writer.print(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            writer.println((long) value);
+        } else {
+            writer.println(value);
+        }
+        return this;
+    }
+
+    private void label(final String label, final String value) {
+
+        writer.print(label);
+        writer.print("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    writer.print("\\\\");
+                    break;
+                case '"':
+                    writer.print("\\\"");
+                    break;
+                case '\n':
+                    writer.print("\\n");
+                    break;
+                default:
+                    writer.print(c);
+                    break;
+            }
+        }
+        writer.print('"');
+    }
+}
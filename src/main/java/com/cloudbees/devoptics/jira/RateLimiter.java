@@ -0,0 +1,131 @@
+package com.cloudbees.devoptics.jira;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/* Per-client, per-route rate limiting, so one misbehaving browser tab can't monopolise the servlet.
+ *
+ * Each client gets a token bucket per limited route, implemented as a GCRA (generic cell rate algorithm): the bucket is
+ * a single "theoretical arrival time" that each permitted request pushes forward by one emission interval.  That makes
+ * taking a token one CAS on an AtomicLong - no locks, and nothing to refill.  Buckets live in a ConcurrentHashMap per
+ * route, which already stripes its locking across bins.
+ *
+ * A bucket whose theoretical arrival time has passed is full, and so is indistinguishable from no bucket at all.  Those
+ * are swept out periodically so memory stays bounded however many clients come and go. */
+class RateLimiter {
+
+    private static final class RouteLimiter {
+
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final long emissionIntervalNanos;
+        private final LongAdder shed = new LongAdder();
+        private final long toleranceNanos;
+
+        private RouteLimiter(final double permitsPerSecond, final int burst) {
+
+            this.emissionIntervalNanos = (long) (1e9 / permitsPerSecond);
+            this.toleranceNanos = emissionIntervalNanos * burst;
+        }
+
+        private long acquire(final String client, final long now) {
+
+            final AtomicLong bucket = buckets.computeIfAbsent(client, c -> new AtomicLong(now));
+            while (true) {
+                final long arrival = bucket.get();
+                final long next = Math.max(arrival, now) + emissionIntervalNanos;
+                final long excess = next - now - toleranceNanos;
+                if (excess > 0) {
+                    shed.increment();
+                    return excess;
+                }
+                if (bucket.compareAndSet(arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void sweep(final long now) {
+
+            final Iterator<AtomicLong> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().get() - now <= 0) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /* How many acquisitions between sweeps for idle buckets, normally and when there are more buckets than we'd like. */
+    private static final int OVERFLOW_SWEEP_INTERVAL = 64;
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final LongSupplier clock;
+    private final int maxBuckets;
+    private final Map<String, RouteLimiter> routes = new HashMap<>();
+
+    RateLimiter(final int maxBuckets) {
+        this(maxBuckets, System::nanoTime);
+    }
+
+    /* For unit testing */
+    RateLimiter(final int maxBuckets, final LongSupplier clock) {
+
+        this.maxBuckets = maxBuckets;
+        this.clock = clock;
+    }
+
+    /* Limit each client to the given steady rate on the route, allowing bursts of up to the given size.  Only to be called
+     * while setting up, before any requests are made. */
+    RateLimiter limit(final String route, final double permitsPerSecond, final int burst) {
+
+        if (permitsPerSecond > 0 && burst > 0) {
+            routes.put(route, new RouteLimiter(permitsPerSecond, burst));
+        }
+        return this;
+    }
+
+    /* Take a permit for the client on the route.  Returns 0 if the request may go ahead, otherwise how many nanoseconds
+     * until it would be allowed. */
+    long acquire(final String route, final String client) {
+
+        final RouteLimiter limiter = routes.get(route);
+        if (limiter == null) {
+            return 0;
+        }
+
+        // Sweep now and then, or more often if we're over the limit.  Not on every call though, as a sweep visits every bucket.
+        final long now = clock.getAsLong();
+        final long count = acquisitions.incrementAndGet();
+        if (count % SWEEP_INTERVAL == 0 || (count % OVERFLOW_SWEEP_INTERVAL == 0 && limiter.buckets.size() > maxBuckets)) {
+            limiter.sweep(now);
+        }
+        return limiter.acquire(client, now);
+    }
+
+    int getBuckets(final String route) {
+
+        final RouteLimiter limiter = routes.get(route);
+        return limiter == null ? 0 : limiter.buckets.size();
+    }
+
+    /* How many requests to the route have been turned away. */
+    long getShed(final String route) {
+
+        final RouteLimiter limiter = routes.get(route);
+        return limiter == null ? 0 : limiter.shed.sum();
+    }
+
+    void write(final PrometheusWriter writer) {
+
+        writer.header("devoptics_requests_shed_total", "counter", "Requests turned away by the DevOptics servlet's rate limiter, by route.");
+        routes.forEach((route, limiter) -> writer.sample("devoptics_requests_shed_total", "route", route, limiter.shed.sum()));
+        writer.header("devoptics_rate_limit_buckets", "gauge", "Clients currently being tracked by the rate limiter, by route.");
+        routes.forEach((route, limiter) -> writer.sample("devoptics_rate_limit_buckets", "route", route, limiter.buckets.size()));
+    }
+}
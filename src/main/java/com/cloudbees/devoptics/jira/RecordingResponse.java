@@ -0,0 +1,86 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/* Wraps the container's response so we can see what status we ended up sending, without relying on
+ * HttpServletResponse.getStatus() being available.  Also holds on to the other bits of the outcome the request log
+ * wants, so handlers don't have to log them as they go. */
+class RecordingResponse extends HttpServletResponseWrapper {
+
+    private long declaredContentLength = -1;
+    private Boolean loggedInUser;
+    private String redirect;
+    private int status = SC_OK;
+
+    RecordingResponse(final HttpServletResponse response) {
+        super(response);
+    }
+
+    /* The Content-Length the handler declared, or -1 if it didn't.  Not the bytes actually written. */
+    long getRecordedDeclaredContentLength() {
+        return declaredContentLength;
+    }
+
+    /* Whether the user was logged in, or null if the handler didn't need to know. */
+    Boolean getRecordedLoggedInUser() {
+        return loggedInUser;
+    }
+
+    String getRecordedRedirect() {
+        return redirect;
+    }
+
+    int getRecordedStatus() {
+        return status;
+    }
+
+    void recordLoggedInUser(final boolean loggedInUser) {
+        this.loggedInUser = loggedInUser;
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+
+        status = sc;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+
+        status = sc;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+
+        status = SC_FOUND;
+        redirect = location;
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+
+        declaredContentLength = len;
+        super.setContentLength(len);
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+
+        declaredContentLength = len;
+        super.setContentLengthLong(len);
+    }
+
+    @Override
+    public void setStatus(final int sc) {
+
+        status = sc;
+        super.setStatus(sc);
+    }
+}
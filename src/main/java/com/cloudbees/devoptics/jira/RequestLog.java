@@ -0,0 +1,174 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/* The last however-many requests the servlet handled, for troubleshooting on demand rather than by turning on debug logging.
+ *
+ * Records go in to a fixed ring of slots allocated up front, so recording a request doesn't allocate or take a lock: it's
+ * a counter increment and a handful of field writes.  Each slot carries the sequence number of the record it holds, which
+ * readers check before and after copying it out, so they never see half of one record and half of the next.  If a
+ * writer laps another that's still filling in the same slot, which takes more requests in flight than there are slots,
+ * its record is dropped rather than waiting. */
+class RequestLog {
+
+    /* One request, as copied out of the log. */
+    static final class Record {
+
+        private final Boolean loggedInUser;
+        private final long nanos;
+        private final String redirect;
+        private final String route;
+        private final long sequence;
+        private final int status;
+        private final long timestamp;
+
+        private Record(final long sequence, final long timestamp, final String route, final int status, final long nanos,
+                final Boolean loggedInUser, final String redirect) {
+
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.route = route;
+            this.status = status;
+            this.nanos = nanos;
+            this.loggedInUser = loggedInUser;
+            this.redirect = redirect;
+        }
+
+        /* Whether the user was logged in, or null if the request didn't need to know. */
+        Boolean getLoggedInUser() {
+            return loggedInUser;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        /* Where the request was redirected to, or null if it wasn't. */
+        String getRedirect() {
+            return redirect;
+        }
+
+        String getRoute() {
+            return route;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        /* When the request finished, in epoch millis. */
+        long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /* A record's worth of fields, reused as the log goes round.  Volatile throughout so that a reader that sees the same
+     * sequence number either side of copying the fields knows it has copied one whole record. */
+    private static final class Slot {
+
+        private volatile Boolean loggedInUser;
+        private volatile long nanos;
+        private volatile String redirect;
+        private volatile String route;
+        private final AtomicLong sequence = new AtomicLong(EMPTY);
+        private volatile int status;
+        private volatile long timestamp;
+    }
+
+    private static final long EMPTY = -1;
+    private static final long WRITING = -2;
+
+    private final LongAdder dropped = new LongAdder();
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final Slot[] slots;
+
+    /* Keeps at least the given number of records, rounded up to a power of two.  0 keeps nothing. */
+    RequestLog(final int size) {
+
+        final int capacity = size <= 0 ? 0 : Integer.highestOneBit(Math.min(size, 1 << 30) * 2 - 1);
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+    }
+
+    void record(final String route, final int status, final long nanos, final Boolean loggedInUser, final String redirect) {
+
+        if (slots.length == 0) {
+            return;
+        }
+
+        final long sequence = next.getAndIncrement();
+        final Slot slot = slots[(int) (sequence & mask)];
+        final long previous = slot.sequence.get();
+        // Someone else is writing this slot, or has already put a newer record in it.
+        if (previous == WRITING || previous > sequence || !slot.sequence.compareAndSet(previous, WRITING)) {
+            dropped.increment();
+            return;
+        }
+
+        slot.timestamp = System.currentTimeMillis();
+        slot.route = route;
+        slot.status = status;
+        slot.nanos = nanos;
+        slot.loggedInUser = loggedInUser;
+        slot.redirect = redirect;
+        slot.sequence.set(sequence);
+    }
+
+    /* Records that lost a race for their slot. */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /* What's in the log right now, oldest first. */
+    List<Record> snapshot() {
+
+        final List<Record> records = new ArrayList<>(slots.length);
+        final long last = next.get();
+        for (long sequence = Math.max(0, last - slots.length); sequence < last; sequence++) {
+            final Slot slot = slots[(int) (sequence & mask)];
+            if (slot.sequence.get() != sequence) {
+                // Not written yet, being written, or already overwritten.
+                continue;
+            }
+            final Record record = new Record(sequence, slot.timestamp, slot.route, slot.status, slot.nanos, slot.loggedInUser, slot.redirect);
+            if (slot.sequence.get() == sequence) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /* One line per record, oldest first, tab separated: sequence, time, route, status, milliseconds taken, logged in
+     * (yes, no or - if not checked) and redirect (or -). */
+    void write(final PrintWriter writer) {
+
+        for (final Record record : snapshot()) {
+            writer.print(record.sequence);
+            writer.print('\t');
+            writer.print(Instant.ofEpochMilli(record.timestamp));
+            writer.print('\t');
+            writer.print(record.route);
+            writer.print('\t');
+            writer.print(record.status);
+            writer.print('\t');
+            writer.print(record.nanos / 1e6);
+            writer.print('\t');
+            writer.print(record.loggedInUser == null ? "-" : record.loggedInUser ? "yes" : "no");
+            writer.print('\t');
+            writer.println(record.redirect == null ? "-" : record.redirect);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloudbees.devoptics.jira;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Per-route request counts, status code counts and latency histograms for the servlet.
+ * Routes are the fixed set of paths the servlet knows about (plus one for everything else), so the number of series
+ * stays bounded however many odd paths get requested. */
+class RequestMetrics {
+
+    private static final class RouteMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+
+    /* Histogram buckets are exported up to 2^26 microseconds, about 67 seconds.  Anything slower only counts towards +Inf. */
+    private static final int MAX_BUCKET_EXPONENT = 26;
+    /* The le label of each exported bucket: every power of two of microseconds, in seconds. */
+    private static final String[] BUCKET_BOUNDS = new String[MAX_BUCKET_EXPONENT + 1];
+
+    static {
+        for (int exponent = 0; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+            BUCKET_BOUNDS[exponent] = BigDecimal.valueOf(1L << exponent).movePointLeft(6).toPlainString();
+        }
+    }
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    void record(final String route, final int status, final long nanos) {
+
+        final RouteMetrics metrics = routes.computeIfAbsent(route, r -> new RouteMetrics());
+        metrics.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        metrics.latency.record(nanos);
+    }
+
+    void write(final PrometheusWriter writer) {
+
+        writer.header("devoptics_requests_total", "counter", "Requests handled by the DevOptics servlet, by route and status code.");
+        routes.forEach((route, metrics) -> metrics.statuses.forEach(
+                (status, count) -> writer.sample("devoptics_requests_total", "route", route, "status", String.valueOf(status), count.sum())));
+
+        // Exported as a histogram rather than as quantiles, so it can be aggregated across nodes and over any window.  The
+        // log-linear buckets are merged in to one per power of two, to keep the number of series down.
+        writer.header("devoptics_request_duration_seconds", "histogram", "Time taken to handle requests to the DevOptics servlet, by route.");
+        routes.forEach((route, metrics) -> {
+            final long[] cumulative = metrics.latency.cumulativeCounts(MAX_BUCKET_EXPONENT);
+            for (int exponent = 0; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+                writer.sample("devoptics_request_duration_seconds_bucket", "route", route, "le", BUCKET_BOUNDS[exponent], cumulative[exponent]);
+            }
+            final long count = cumulative[MAX_BUCKET_EXPONENT + 1];
+            writer.sample("devoptics_request_duration_seconds_bucket", "route", route, "le", "+Inf", count);
+            writer.sample("devoptics_request_duration_seconds_sum", "route", route, metrics.latency.getSumNanos() / 1e9);
+            writer.sample("devoptics_request_duration_seconds_count", "route", route, count);
+        });
+    }
+}
@@ -0,0 +1,139 @@
+package com.cloudbees.devoptics.jira;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.SigningKeyStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/* Creates and checks the tokens that carry a DevOptics return URL through Jira's login redirect, so we don't have to
+ * park it in an HttpSession.  A token is the URL plus an expiry time, signed with HMAC-SHA256:
+ *
+ *     base64url(expiry seconds (8 bytes) + URL (UTF-8)) "." base64url(first 16 bytes of the HMAC)
+ *
+ * The signing key comes from a SigningKeyStore shared by every node in the cluster, so a token made by one node can be
+ * checked by any other.  If two nodes race to create the key, the loser holds one the store no longer has, so the key is
+ * loaded again now and then until a load finds it unchanged.  Loading is a database read, so it's done at most once every
+ * RELOAD_INTERVAL_SECONDS however many bad tokens turn up. */
+class ReturnUrlTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+    private static final long RELOAD_INTERVAL_SECONDS = 60L;
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final LongSupplier clock;
+    private volatile byte[] key;
+    /* Whether the key has been loaded twice and found the same, so there's no race left to lose. */
+    private volatile boolean keyConfirmed;
+    private final AtomicLong lastLoad = new AtomicLong();
+    private final SigningKeyStore signingKeyStore;
+    private final long ttlSeconds;
+
+    ReturnUrlTokens(final SigningKeyStore signingKeyStore, final long ttlSeconds) {
+        this(signingKeyStore, ttlSeconds, () -> System.currentTimeMillis() / 1000L);
+    }
+
+    /* For unit testing */
+    ReturnUrlTokens(final SigningKeyStore signingKeyStore, final long ttlSeconds, final LongSupplier clock) {
+
+        this.signingKeyStore = signingKeyStore;
+        this.ttlSeconds = ttlSeconds;
+        this.clock = clock;
+    }
+
+    /* A fresh random key, in the form a SigningKeyStore should keep it. */
+    static String generateKey() {
+
+        final byte[] bytes = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    String create(final String returnUrl) {
+
+        final byte[] url = returnUrl.getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = ByteBuffer.allocate(Long.BYTES + url.length).putLong(clock.getAsLong() + ttlSeconds).put(url).array();
+
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(sign(key(!keyConfirmed), payload));
+    }
+
+    /* The return URL in the token, or null if the token is malformed, has been tampered with or has expired. */
+    String verify(final String token) {
+
+        final int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+
+        final byte[] payload;
+        final byte[] signature;
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(token.substring(0, dot));
+            signature = decoder.decode(token.substring(dot + 1));
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length < Long.BYTES) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(signature, sign(key(false), payload))) {
+            // Maybe another node won the race to create the cluster's key and we're holding a stale one.  Check again.
+            if (!MessageDigest.isEqual(signature, sign(key(true), payload))) {
+                return null;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (buffer.getLong() < clock.getAsLong()) {
+            return null;
+        }
+        return new String(payload, Long.BYTES, payload.length - Long.BYTES, StandardCharsets.UTF_8);
+    }
+
+    /* The signing key, loaded from the store the first time it's needed.  Loaded again if asked to reload, as long as
+     * it's been RELOAD_INTERVAL_SECONDS since the last load. */
+    private byte[] key(final boolean reload) {
+
+        byte[] result = key;
+        if (result == null) {
+            lastLoad.set(clock.getAsLong());
+            result = Base64.getDecoder().decode(signingKeyStore.getOrCreateKey());
+            key = result;
+        } else if (reload) {
+            final long now = clock.getAsLong();
+            final long last = lastLoad.get();
+            if (now - last >= RELOAD_INTERVAL_SECONDS && lastLoad.compareAndSet(last, now)) {
+                final byte[] loaded = Base64.getDecoder().decode(signingKeyStore.getOrCreateKey());
+                keyConfirmed = Arrays.equals(loaded, result);
+                result = loaded;
+                key = result;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] sign(final byte[] key, final byte[] payload) {
+
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return Arrays.copyOf(mac.doFinal(payload), SIGNATURE_BYTES);
+        } catch (final GeneralSecurityException e) {
+            // Every JRE is required to support HmacSHA256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
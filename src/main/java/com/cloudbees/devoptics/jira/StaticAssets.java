@@ -0,0 +1,327 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/* Serves the files under a directory, or under a prefix on the classpath, without ever holding a whole file on the heap
+ * per request.
+ *
+ * Files are sent with the container's sendfile support where it has it (Tomcat, which Jira runs on, does), which has the
+ * kernel copy the file straight to the socket.  Otherwise they're copied to the response with FileChannel.transferTo.
+ * That isn't zero-copy, as the response is only a stream, so the file passes through a small buffer on its way out, but
+ * it's never all on the heap at once.  Classpath assets can't be read from a channel, as they're inside the plugin jar, so
+ * small ones are read once and kept, and big ones are streamed.
+ * Kept ones are written with AsyncBodyWriter, so a slow client doesn't hold a thread while it reads one.
+ *
+ * Supports Content-Length, Last-Modified/If-Modified-Since and single byte ranges. */
+class StaticAssets {
+
+    /* What we know about one asset.  Exactly one of bytes, file or url is set. */
+    private static final class Asset {
+
+        private final byte[] bytes;
+        private final String contentType;
+        private final Path file;
+        private final long lastModified;
+        private final long length;
+        private final URL url;
+
+        private Asset(final String contentType, final long length, final long lastModified, final Path file, final byte[] bytes, final URL url) {
+
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.file = file;
+            this.bytes = bytes;
+            this.url = url;
+        }
+    }
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+    private static final Logger LOG = Logger.getLogger(StaticAssets.class);
+    /* Classpath assets up to this size are kept in memory once they've been asked for. */
+    private static final long MAX_CACHED_LENGTH = 1024 * 1024;
+    /* Files smaller than this aren't worth handing to sendfile.  The same threshold Tomcat's DefaultServlet uses. */
+    private static final long MIN_SENDFILE_LENGTH = 48 * 1024;
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    static {
+        CONTENT_TYPES.put("css", "text/css;charset=UTF-8");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("html", "text/html;charset=UTF-8");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("js", "application/javascript;charset=UTF-8");
+        CONTENT_TYPES.put("json", "application/json;charset=UTF-8");
+        CONTENT_TYPES.put("map", "application/json;charset=UTF-8");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("txt", "text/plain;charset=UTF-8");
+        CONTENT_TYPES.put("woff", "font/woff");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+    }
+
+    private final AsyncBodyWriter asyncBodyWriter;
+    private final Map<String, Asset> classpathAssets = new ConcurrentHashMap<>();
+    private final String classpathPrefix;
+    private final Path directory;
+    private final long maxAgeSeconds;
+
+    /* Serve from the directory if there is one, otherwise from under the prefix on the classpath. */
+    StaticAssets(final Path directory, final String classpathPrefix, final long maxAgeSeconds, final AsyncBodyWriter asyncBodyWriter) {
+
+        this.asyncBodyWriter = asyncBodyWriter;
+        this.directory = directory == null ? null : directory.toAbsolutePath().normalize();
+        this.classpathPrefix = classpathPrefix;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /* Send the named asset, relative to the directory or classpath prefix, or a 404 if there's no such thing. */
+    void serve(final String name, final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+
+        final Asset asset = isSafe(name) ? find(name) : null;
+        if (asset == null) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        resp.addHeader("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        resp.addHeader("Accept-Ranges", "bytes");
+        resp.setDateHeader("Last-Modified", asset.lastModified);
+
+        // Last-Modified only goes to the second, so compare at that.
+        final long ifModifiedSince = ifModifiedSince(req);
+        if (ifModifiedSince >= 0 && asset.lastModified / 1000 <= ifModifiedSince / 1000) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = asset.length;
+        final long[] range = range(req, asset);
+        if (range != null) {
+            if (range.length == 0) {
+                resp.addHeader("Content-Range", "bytes */" + asset.length);
+                resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range[0];
+            end = range[1];
+            resp.addHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + asset.length);
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        } else {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        resp.setContentType(asset.contentType);
+        resp.setContentLengthLong(end - start);
+        write(asset, start, end, req, resp);
+    }
+
+    private Asset find(final String name) throws IOException {
+
+        if (directory != null) {
+            return findFile(name);
+        }
+
+        final Asset cached = classpathAssets.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        final URL url = Thread.currentThread().getContextClassLoader().getResource(classpathPrefix + name);
+        if (url == null) {
+            return null;
+        }
+        final URLConnection connection = url.openConnection();
+        final long length = connection.getContentLengthLong();
+        final long lastModified = connection.getLastModified();
+        final Asset asset;
+        // If we can't tell how big it is, we have to read it to find out anyway.
+        if (length <= MAX_CACHED_LENGTH) {
+            final byte[] bytes;
+            try (InputStream is = connection.getInputStream()) {
+                bytes = IOUtils.toByteArray(is);
+            }
+            asset = new Asset(contentType(name), bytes.length, lastModified, null, bytes, null);
+        } else {
+            // Only wanted the metadata, but it's opened the resource to get it.
+            connection.getInputStream().close();
+            asset = new Asset(contentType(name), length, lastModified, null, null, url);
+        }
+        // The classpath can't change under us, so this is good until the plugin is redeployed.
+        classpathAssets.put(name, asset);
+        LOG.debug("Cached asset " + name + " (" + asset.length + " bytes)");
+        return asset;
+    }
+
+    private Asset findFile(final String name) throws IOException {
+
+        final Path file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        // Don't follow a link out of the directory.
+        if (!file.toRealPath().startsWith(directory.toRealPath())) {
+            return null;
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new Asset(contentType(name), attributes.size(), attributes.lastModifiedTime().toMillis(), file, null, null);
+    }
+
+    private void write(final Asset asset, final long start, final long end, final HttpServletRequest req, final HttpServletResponse resp)
+            throws IOException {
+
+        if (asset.bytes != null) {
+            asyncBodyWriter.write(req, resp, asset.bytes, (int) start, (int) (end - start));
+            return;
+        }
+
+        if (asset.url != null) {
+            try (InputStream is = asset.url.openStream()) {
+                IOUtils.copyLarge(is, resp.getOutputStream(), start, end - start);
+            }
+            return;
+        }
+
+        // Not for HEAD requests, where there should be no body for the container to send.
+        if (end - start >= MIN_SENDFILE_LENGTH && "GET".equals(req.getMethod()) && Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            // Leave it to the container.  It sends the file once we return, without it passing through the JVM.
+            req.setAttribute(SENDFILE_FILENAME, asset.file.toString());
+            req.setAttribute(SENDFILE_START, start);
+            req.setAttribute(SENDFILE_END, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(asset.file, StandardOpenOption.READ)) {
+            final OutputStream outputStream = resp.getOutputStream();
+            // Only a stream underneath, so transferTo copies through a buffer here rather than in the kernel.
+            final WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = start;
+            while (position < end) {
+                final long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    // The file has shrunk since we said how long it was.  All we can do is cut the response short.
+                    throw new IOException("Asset " + asset.file + " changed while being sent");
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static String contentType(final String name) {
+
+        final int dot = name.lastIndexOf('.');
+        final String contentType = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        if (contentType != null) {
+            return contentType;
+        }
+        final String guessed = URLConnection.guessContentTypeFromName(name);
+        return guessed == null ? "application/octet-stream" : guessed;
+    }
+
+    /* The If-Modified-Since time, or -1 if there isn't one we can make sense of. */
+    private static long ifModifiedSince(final HttpServletRequest req) {
+
+        try {
+            return req.getDateHeader("If-Modified-Since");
+        } catch (final IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /* Nothing that could get outside the directory or prefix: no parent references, absolute paths or odd characters. */
+    private static boolean isSafe(final String name) {
+
+        if (name == null || name.isEmpty() || name.startsWith("/") || name.endsWith("/") || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0
+                || name.indexOf(':') >= 0) {
+            return false;
+        }
+        for (final String segment : name.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* The single range the client asked for, as {start, end exclusive}.  Null to send the whole thing, which is also what
+     * we do for anything we don't understand, like multiple ranges.  An empty array if the range can't be satisfied. */
+    private static long[] range(final HttpServletRequest req, final Asset asset) {
+
+        final String header = req.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        // If-Range says only to send the range if the asset hasn't changed since the client got the rest of it.
+        final String ifRange = req.getHeader("If-Range");
+        if (ifRange != null) {
+            try {
+                if (req.getDateHeader("If-Range") / 1000 != asset.lastModified / 1000) {
+                    return null;
+                }
+            } catch (final IllegalArgumentException e) {
+                // An ETag, and we don't give out ETags, so it can't match.
+                return null;
+            }
+        }
+
+        final String spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            final long start;
+            final long end;
+            if (first.isEmpty()) {
+                // The last so many bytes.
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, asset.length - suffix);
+                end = asset.length;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? asset.length : Math.min(Long.parseLong(last) + 1, asset.length);
+                if (end <= start) {
+                    return start >= asset.length ? new long[0] : null;
+                }
+            }
+            if (start >= asset.length) {
+                return new long[0];
+            }
+            return new long[] { start, end };
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
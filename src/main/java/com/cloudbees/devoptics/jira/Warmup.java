@@ -0,0 +1,227 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/* Times the steps the servlet goes through when it starts up, and knows whether it's ready for real requests.
+ *
+ * Each step is run and timed in turn.  A step that fails is recorded rather than stopping the rest.  Required steps are
+ * the ones the servlet can't work without, like loading its content: if any of those fail it's not ready.  The others
+ * only warm things up, and real requests will work without them, just slower.
+ *
+ * Also makes the synthetic requests the warm-up steps feed through the handlers. */
+class Warmup {
+
+    /* One step of the warm-up. */
+    static interface Step {
+        void run() throws Exception;
+    }
+
+    /* How one step went. */
+    static final class Timing {
+
+        private final String failure;
+        private final String name;
+        private final long nanos;
+        private final boolean required;
+
+        private Timing(final String name, final boolean required, final long nanos, final String failure) {
+
+            this.name = name;
+            this.required = required;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        /* Why the step failed, or null if it didn't. */
+        String getFailure() {
+            return failure;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        boolean isRequired() {
+            return required;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(Warmup.class);
+    /* The request attribute that's set on synthetic requests, and only on them. */
+    private static final String SYNTHETIC = Warmup.class.getName() + ".synthetic";
+
+    private volatile boolean complete;
+    private volatile boolean failed;
+    private final List<Timing> timings = new CopyOnWriteArrayList<>();
+
+    /* Run a step, timing it and catching anything it throws. */
+    void run(final String name, final boolean required, final Step step) {
+
+        final long start = System.nanoTime();
+        String failure = null;
+        try {
+            step.run();
+        } catch (final Exception | LinkageError e) {
+            failure = e.toString();
+            if (required) {
+                LOG.warn("Startup step " + name + " failed", e);
+            } else {
+                // Quite possible outside of a real request, and real requests will work regardless.
+                LOG.debug("Startup step " + name + " failed", e);
+            }
+        }
+        final long nanos = System.nanoTime() - start;
+        timings.add(new Timing(name, required, nanos, failure));
+        if (failure != null && required) {
+            failed = true;
+        }
+        LOG.debug("Startup step " + name + " took " + nanos / 1_000_000 + "ms");
+    }
+
+    /* There are no more steps to come. */
+    void complete() {
+        complete = true;
+    }
+
+    /* The steps run so far, in the order they ran. */
+    List<Timing> getTimings() {
+        return Collections.unmodifiableList(timings);
+    }
+
+    /* Whether every step has run, and every required one succeeded. */
+    boolean isReady() {
+        return complete && !failed;
+    }
+
+    void write(final PrometheusWriter writer) {
+
+        writer.header("devoptics_ready", "gauge", "1 once the DevOptics servlet has started up and is ready for requests, otherwise 0.")
+                .sample("devoptics_ready", isReady() ? 1 : 0);
+        writer.header("devoptics_startup_step_seconds", "gauge", "Time taken by each step of the DevOptics servlet starting up, by step and outcome.");
+        for (final Timing timing : timings) {
+            writer.sample("devoptics_startup_step_seconds", "step", timing.name, "outcome", timing.failure == null ? "ok" : "failed",
+                    timing.nanos / 1e9);
+        }
+    }
+
+    /* Whether the request is one of ours, rather than from a browser. */
+    static boolean isSynthetic(final HttpServletRequest req) {
+        return Boolean.TRUE.equals(req.getAttribute(SYNTHETIC));
+    }
+
+    /* A stand-in for a browser's GET of the path, as if the servlet were mounted at the root of localhost.  It has no
+     * session, parameters or headers besides Accept-Encoding, which may be null, and no attributes besides the one that
+     * marks it as synthetic. */
+    static HttpServletRequest request(final String pathInfo, final String acceptEncoding) {
+
+        return (HttpServletRequest) Proxy.newProxyInstance(Warmup.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAttribute":
+                            return SYNTHETIC.equals(args[0]) ? Boolean.TRUE : null;
+                        case "getContextPath":
+                        case "getServletPath":
+                            return "";
+                        case "getDateHeader":
+                        case "getIntHeader":
+                            return method.getReturnType() == long.class ? -1L : -1;
+                        case "getHeader":
+                            return "Accept-Encoding".equalsIgnoreCase((String) args[0]) ? acceptEncoding : null;
+                        case "getHeaderNames":
+                        case "getHeaders":
+                        case "getParameterNames":
+                            return Collections.emptyEnumeration();
+                        case "getMethod":
+                            return "GET";
+                        case "getPathInfo":
+                            return pathInfo;
+                        case "getRequestURI":
+                            return pathInfo;
+                        case "getScheme":
+                            return "http";
+                        case "getServerName":
+                            return "localhost";
+                        case "getServerPort":
+                            return 80;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    /* A response that throws away everything written to it. */
+    static HttpServletResponse response() {
+
+        final ServletOutputStream outputStream = new ServletOutputStream() {
+
+            @Override
+            public void write(final int b) {
+                // Discard
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                // Discard
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+
+                // Always ready, so there's nothing to wait for.
+                try {
+                    writeListener.onWritePossible();
+                } catch (final IOException e) {
+                    writeListener.onError(e);
+                }
+            }
+        };
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        return (HttpServletResponse) Proxy.newProxyInstance(Warmup.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return outputStream;
+                        case "getWriter":
+                            return writer;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(final Class<?> type) {
+
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
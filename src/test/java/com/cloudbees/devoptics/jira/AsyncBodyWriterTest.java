@@ -0,0 +1,144 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class AsyncBodyWriterTest {
+
+    private final AsyncContext asyncContext = mock(AsyncContext.class);
+    private final byte[] body = new byte[20_000];
+    private final ServletOutputStream outputStream = mock(ServletOutputStream.class);
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final AsyncBodyWriter writer = new AsyncBodyWriter(10_000, 60_000L);
+
+    @Before
+    public void setUp() throws IOException {
+
+        when(response.getOutputStream()).thenReturn(outputStream);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync(request, response)).thenReturn(asyncContext);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+
+        // The socket takes one chunk, fills up, then drains.
+        when(outputStream.isReady()).thenReturn(true, false, true, true, true);
+
+        writer.write(request, response, body);
+        final WriteListener listener = listener();
+        listener.onWritePossible();
+
+        verify(asyncContext).setTimeout(60_000L);
+        verify(outputStream).write(body, 0, 8192);
+        verify(outputStream, never()).write(body, 8192, 8192);
+        verify(asyncContext, never()).complete();
+
+        listener.onWritePossible();
+
+        verify(outputStream).write(body, 8192, 8192);
+        verify(outputStream).write(body, 16384, 3616);
+        verify(asyncContext).complete();
+        assertMetric("devoptics_async_writes_total{outcome=\"complete\"} 1");
+        assertMetric("devoptics_async_writes_in_flight 0");
+    }
+
+    @Test
+    public void testWrite_asyncNotSupported() throws IOException {
+
+        when(request.isAsyncSupported()).thenReturn(false);
+
+        writer.write(request, response, body);
+
+        verify(outputStream).write(body);
+        verify(request, never()).startAsync(request, response);
+    }
+
+    @Test
+    public void testWrite_head() throws IOException {
+
+        // There's no body to send, so the container may never call a WriteListener back.
+        when(request.getMethod()).thenReturn("HEAD");
+
+        writer.write(request, response, body);
+
+        verify(outputStream).write(body);
+        verify(request, never()).startAsync(request, response);
+    }
+
+    @Test
+    public void testWrite_range() throws IOException {
+
+        when(outputStream.isReady()).thenReturn(true);
+
+        writer.write(request, response, body, 5_000, 12_000);
+        listener().onWritePossible();
+
+        verify(outputStream).write(body, 5_000, 8192);
+        verify(outputStream).write(body, 13_192, 3808);
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    public void testWrite_small() throws IOException {
+
+        final byte[] small = "Small".getBytes();
+
+        writer.write(request, response, small);
+
+        verify(outputStream).write(small);
+        verify(request, never()).startAsync(request, response);
+    }
+
+    @Test
+    public void testWrite_timeout() throws IOException {
+
+        // The client never reads anything.
+        when(outputStream.isReady()).thenReturn(true, false);
+
+        writer.write(request, response, body);
+        listener().onWritePossible();
+        final ArgumentCaptor<AsyncListener> captor = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(captor.capture());
+        captor.getValue().onTimeout(new AsyncEvent(asyncContext));
+
+        verify(asyncContext).complete();
+        assertMetric("devoptics_async_writes_total{outcome=\"timeout\"} 1");
+        assertMetric("devoptics_async_writes_total{outcome=\"complete\"} 0");
+    }
+
+    private void assertMetric(final String sample) {
+
+        final StringWriter out = new StringWriter();
+        writer.write(new PrometheusWriter(new PrintWriter(out, true)));
+        assertTrue(out.toString(), out.toString().contains(sample + "\n"));
+    }
+
+    private WriteListener listener() {
+
+        final ArgumentCaptor<WriteListener> captor = ArgumentCaptor.forClass(WriteListener.class);
+        verify(outputStream).setWriteListener(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,134 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.AuthenticationContext;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Test;
+
+public class CachingAuthenticationContextTest {
+
+    private static final long TTL_MILLIS = 1_000L;
+
+    private final AuthenticationContext delegate = mock(AuthenticationContext.class);
+    private final AtomicLong now = new AtomicLong();
+    private final CachingAuthenticationContext cache = new CachingAuthenticationContext(delegate, TTL_MILLIS, 2, now::get);
+
+    @Test
+    public void testIsLoggedInUser_cachedWithinTtl() {
+
+        final HttpServletRequest request = request("session-1", "fred");
+        when(delegate.isLoggedInUser()).thenReturn(true);
+
+        assertTrue(cache.isLoggedInUser(request));
+        assertTrue(cache.isLoggedInUser(request));
+
+        verify(delegate, times(1)).isLoggedInUser();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testIsLoggedInUser_expires() {
+
+        final HttpServletRequest request = request("session-1", "fred");
+        when(delegate.isLoggedInUser()).thenReturn(true);
+
+        cache.isLoggedInUser(request);
+        now.addAndGet(TTL_MILLIS * 1_000_000L);
+        cache.isLoggedInUser(request);
+
+        verify(delegate, times(2)).isLoggedInUser();
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testIsLoggedInUser_invalidate() {
+
+        final HttpServletRequest request = request("session-1", null);
+        when(delegate.isLoggedInUser()).thenReturn(false);
+
+        cache.isLoggedInUser(request);
+        cache.invalidate(request);
+        cache.isLoggedInUser(request);
+
+        verify(delegate, times(2)).isLoggedInUser();
+    }
+
+    @Test
+    public void testIsLoggedInUser_maxSize() {
+
+        when(delegate.isLoggedInUser()).thenReturn(true);
+
+        cache.isLoggedInUser(request("session-1", "fred"));
+        cache.isLoggedInUser(request("session-2", "barney"));
+        cache.isLoggedInUser(request("session-3", "wilma"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testIsLoggedInUser_maxSize_expiredFirst() {
+
+        when(delegate.isLoggedInUser()).thenReturn(true);
+
+        cache.isLoggedInUser(request("session-1", "fred"));
+        now.addAndGet(TTL_MILLIS * 1_000_000L / 2);
+        cache.isLoggedInUser(request("session-2", "barney"));
+        now.addAndGet(TTL_MILLIS * 1_000_000L / 2);
+        cache.isLoggedInUser(request("session-3", "wilma"));
+
+        // session-1 had expired, so it made room rather than either of the live ones.
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        cache.isLoggedInUser(request("session-2", "barney"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testIsLoggedInUser_noSession() {
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(delegate.isLoggedInUser()).thenReturn(true);
+
+        cache.isLoggedInUser(request);
+        cache.isLoggedInUser(request);
+
+        verify(delegate, times(2)).isLoggedInUser();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testIsLoggedInUser_remoteUserChanged() {
+
+        // Anonymous, then the same session logs in.
+        when(delegate.isLoggedInUser()).thenReturn(false, true);
+
+        assertFalse(cache.isLoggedInUser(request("session-1", null)));
+        assertTrue(cache.isLoggedInUser(request("session-1", "fred")));
+
+        verify(delegate, times(2)).isLoggedInUser();
+    }
+
+    private static HttpServletRequest request(final String sessionId, final String remoteUser) {
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        final HttpSession session = mock(HttpSession.class);
+        when(request.getSession(false)).thenReturn(session);
+        when(request.getRemoteUser()).thenReturn(remoteUser);
+        when(session.getId()).thenReturn(sessionId);
+        return request;
+    }
+}
@@ -0,0 +1,31 @@
+package com.cloudbees.devoptics.jira;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/* Collects whatever's written to it, so tests can check the body of a response. */
+class CapturingOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    @Override
+    public void write(final int b) {
+        baos.write(b);
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    byte[] toByteArray() {
+        return baos.toByteArray();
+    }
+}
@@ -1,7 +1,12 @@
 package com.cloudbees.devoptics.jira;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -10,6 +15,9 @@ import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.Authenticat
 import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.HtmlContentProvider;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 
@@ -17,16 +25,34 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 
 public class DevOpticsJIRAServerPluginServletTest {
 
     private static final String API_PATH = "/plugins/servlet/devoptics";
     private static final String CLICKJACKING_PROTECTION_EXCLUDE_KEY = "com.atlassian.jira.clickjacking.protection.exclude";
+    private static final String RATE_LIMIT_KEY_PREFIX = "com.cloudbees.devoptics.jira.rateLimit./is-logged-in.";
+    private static final String RETURN_URL_MODE_KEY = "com.cloudbees.devoptics.jira.returnUrl.mode";
+    private static final String WARMUP_ITERATIONS_KEY = "com.cloudbees.devoptics.jira.warmup.iterations";
 
     private DevOpticsJIRAServerPluginServlet servlet = new DevOpticsJIRAServerPluginServlet();
 
+    @Before
+    public void setUp() {
+
+        // Otherwise every init() puts each handler through a hundred synthetic requests.  The warm-up test turns it back on.
+        System.setProperty(WARMUP_ITERATIONS_KEY, "0");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(WARMUP_ITERATIONS_KEY);
+    }
+
     @Test
     public void testClickjackingProtectionExclude_missingProperty() throws Exception {
 
@@ -73,6 +99,44 @@ public class DevOpticsJIRAServerPluginServletTest {
         testClickjackingProtectionExclude_withValue("/plugins/servlet/devopticsx,bar", "/plugins/servlet/devopticsx,bar,/plugins/servlet/devoptics");
     }
 
+    @Test
+    public void testDoGet_assets_logo() throws IOException, ServletException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        servlet = new DevOpticsJIRAServerPluginServlet(null, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/assets/DevOptics Logo (144px).png");
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("image/png");
+    }
+
+    @Test
+    public void testDoGet_assets_outsideAssets() throws IOException, ServletException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        servlet = new DevOpticsJIRAServerPluginServlet(null, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/assets/../serve-me.html");
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_NOT_FOUND);
+        verify(response, never()).getOutputStream();
+    }
+
     @Test
     public void testDoGet_blankPath() throws IOException, ServletException {
 
@@ -91,6 +155,132 @@ public class DevOpticsJIRAServerPluginServletTest {
         verify(response).setStatus(HttpServletResponse.SC_NOT_FOUND);
     }
 
+    @Test
+    public void testDoGet_bootstrap() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final CapturingOutputStream outputStream = new CapturingOutputStream();
+        final byte[] htmlContent = ("<a href='{{baseUrl}}'>{{contextPath}}</a><script>var b = {loggedIn: '{{js:loggedIn}}', "
+                + "loginUrl: '{{js:loginUrl}}', xsrfToken: '{{js:xsrfToken}}'};</script>").getBytes(StandardCharsets.UTF_8);
+        final String expected = "<a href='https://jira.example.com:8443/jira'>/jira</a><script>var b = {loggedIn: 'true', "
+                + "loginUrl: '\\u002fjira\\u002fplugins\\u002fservlet\\u002fdevoptics\\u002fdo-login?devOpticsReturnUrl=https%3A%2F%2Fexample.com%2Fu%2F', "
+                + "xsrfToken: 'a token'};</script>";
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, authenticationContext, null, req -> "a token");
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/bootstrap");
+        when(request.getScheme()).thenReturn("https");
+        when(request.getServerName()).thenReturn("jira.example.com");
+        when(request.getServerPort()).thenReturn(8443);
+        when(request.getContextPath()).thenReturn("/jira");
+        when(request.getParameter("devOpticsReturnUrl")).thenReturn("https://example.com/u/");
+        when(response.getOutputStream()).thenReturn(outputStream);
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+        when(authenticationContext.isLoggedInUser()).thenReturn(true);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        assertEquals(expected, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        verify(response).addHeader("Cache-Control", "private, no-cache, no-store, must-revalidate");
+        verify(response).setContentLength(expected.length());
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testDoGet_bootstrap_escaped() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final CapturingOutputStream outputStream = new CapturingOutputStream();
+        final byte[] htmlContent = "<p>{{xsrfToken}}</p><script>'{{js:xsrfToken}}'</script>".getBytes(StandardCharsets.UTF_8);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, authenticationContext, null, req -> "</script>'");
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/bootstrap");
+        when(response.getOutputStream()).thenReturn(outputStream);
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+        when(authenticationContext.isLoggedInUser()).thenReturn(false);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results.  Nothing in a value can break out of where it's put.
+        assertEquals("<p>&#x3c;/script&#x3e;&#x27;</p><script>'\\u003c\\u002fscript\\u003e\\u0027'</script>",
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testDoGet_debugRecent() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse debugResponse = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        final StringWriter body = new StringWriter();
+        servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext, null, null, req -> true);
+
+        // Define mock behaviour
+        when(authenticationContext.isLoggedInUser()).thenReturn(false);
+        when(request.getParameter("devOpticsReturnUrl")).thenReturn("https://devoptics.cloudbees.com/u/");
+        when(request.getRequestURI()).thenReturn(API_PATH + "/do-login");
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        when(debugResponse.getWriter()).thenReturn(new PrintWriter(body));
+
+        // Execute test
+        when(request.getPathInfo()).thenReturn("/is-logged-in");
+        servlet.doGet(request, response);
+        when(request.getPathInfo()).thenReturn("/do-login");
+        servlet.doGet(request, response);
+        when(request.getPathInfo()).thenReturn("/debug/recent");
+        servlet.doGet(request, debugResponse);
+
+        // Verify results.  The request log has what it had before this request, oldest first.
+        final String[] lines = body.toString().split("\n");
+        assertEquals(body.toString(), 2, lines.length);
+        final String[] isLoggedIn = lines[0].split("\t");
+        assertEquals("0", isLoggedIn[0]);
+        assertEquals("/is-logged-in", isLoggedIn[2]);
+        assertEquals("401", isLoggedIn[3]);
+        assertEquals("no", isLoggedIn[5]);
+        assertEquals("-", isLoggedIn[6]);
+        final String[] doLogin = lines[1].split("\t");
+        assertEquals("/do-login", doLogin[2]);
+        assertEquals("302", doLogin[3]);
+        assertEquals("no", doLogin[5]);
+        assertEquals("/login.jsp?os_destination=" + URLEncoder.encode(API_PATH + "/do-login", StandardCharsets.UTF_8.name()), doLogin[6]);
+        verify(debugResponse).setContentType("text/plain;charset=UTF-8");
+    }
+
+    @Test
+    public void testDoGet_debugRecent_notAdministrator() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        servlet = new DevOpticsJIRAServerPluginServlet(null, null, null, null, req -> false);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/debug/recent");
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_FORBIDDEN);
+        verify(response, never()).getWriter();
+    }
+
     @Test
     public void testDoGet_doLogin_isLoggedIn() throws ServletException, IOException {
 
@@ -138,6 +328,69 @@ public class DevOpticsJIRAServerPluginServletTest {
         verify(response).sendRedirect("/login.jsp?os_destination=" + URLEncoder.encode(requestUri, StandardCharsets.UTF_8.name()));
     }
 
+    @Test
+    public void testDoGet_doLogin_returnUrlToken() throws ServletException, IOException {
+
+        // Setup test objects
+        final String requestUri = "the request URI";
+        final String returnUrl = "some URL to return to";
+        final String signingKey = ReturnUrlTokens.generateKey();
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        System.setProperty(RETURN_URL_MODE_KEY, "token");
+        try {
+            servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext, () -> signingKey);
+        } finally {
+            System.clearProperty(RETURN_URL_MODE_KEY);
+        }
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/do-login");
+        when(authenticationContext.isLoggedInUser()).thenReturn(false);
+        when(request.getParameter("devOpticsReturnUrl")).thenReturn(returnUrl);
+        when(request.getRequestURI()).thenReturn(requestUri);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results.  The return URL goes in a token, not the session.
+        final ArgumentCaptor<String> redirectTo = ArgumentCaptor.forClass(String.class);
+        verify(request, never()).getSession();
+        verify(response).sendRedirect(redirectTo.capture());
+        final String prefix = "/login.jsp?os_destination=" + URLEncoder.encode(requestUri + "?devOpticsReturnToken=", StandardCharsets.UTF_8.name());
+        assertTrue(redirectTo.getValue(), redirectTo.getValue().startsWith(prefix));
+        final String token = URLDecoder.decode(redirectTo.getValue().substring(prefix.length()), StandardCharsets.UTF_8.name());
+
+        // Now come back in, logged in, with the token.
+        when(authenticationContext.isLoggedInUser()).thenReturn(true);
+        when(request.getParameter("devOpticsReturnToken")).thenReturn(token);
+        servlet.doGet(request, response);
+
+        verify(response).sendRedirect(returnUrl);
+    }
+
+    @Test
+    public void testDoGet_doLogin_returnUrlToken_invalid() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext, ReturnUrlTokens::generateKey);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/do-login");
+        when(authenticationContext.isLoggedInUser()).thenReturn(true);
+        when(request.getParameter("devOpticsReturnToken")).thenReturn("not.valid");
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
     @Test
     public void testDoGet_doLogin_noReturnPath() throws ServletException, IOException {
 
@@ -223,6 +476,62 @@ public class DevOpticsJIRAServerPluginServletTest {
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testDoGet_isLoggedIn_pollInterval() throws IOException, ServletException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        final ArgumentCaptor<String> interval = ArgumentCaptor.forClass(String.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/is-logged-in");
+        when(request.getSession(false)).thenReturn(null);
+        when(authenticationContext.isLoggedInUser()).thenReturn(true);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results.  An idle node suggests the base interval, give or take the jitter.
+        verify(response).setHeader(eq("X-DevOptics-Poll-Interval-Millis"), interval.capture());
+        final long millis = Long.parseLong(interval.getValue());
+        assertTrue(String.valueOf(millis), millis >= 4_000L && millis <= 6_000L);
+    }
+
+    @Test
+    public void testDoGet_isLoggedIn_rateLimited() throws IOException, ServletException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        System.setProperty(RATE_LIMIT_KEY_PREFIX + "perSecond", "0.1");
+        System.setProperty(RATE_LIMIT_KEY_PREFIX + "burst", "1");
+        try {
+            servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext);
+        } finally {
+            System.clearProperty(RATE_LIMIT_KEY_PREFIX + "perSecond");
+            System.clearProperty(RATE_LIMIT_KEY_PREFIX + "burst");
+        }
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/is-logged-in");
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(authenticationContext.isLoggedInUser()).thenReturn(true);
+
+        // Execute test
+        servlet.doGet(request, response);
+        servlet.doGet(request, response);
+
+        // Verify results.  The first one gets through, the second is told to come back in 10 seconds.
+        verify(authenticationContext, times(1)).isLoggedInUser();
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setStatus(429);
+        verify(response).addHeader("Retry-After", "10");
+    }
+
     @Test
     public void testDoGet_loadHtml() throws ServletException, IOException {
 
@@ -235,6 +544,7 @@ public class DevOpticsJIRAServerPluginServletTest {
 
         // Define mock behaviour
         when(request.getPathInfo()).thenReturn("/load.html");
+        when(request.getQueryString()).thenReturn("a=b");
         when(htmlContentProvider.getContent()).thenReturn(htmlContent);
 
         // Execute test
@@ -244,10 +554,252 @@ public class DevOpticsJIRAServerPluginServletTest {
         verify(response).addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
         verify(response).addHeader("Pragma", "no-cache");
         verify(response).addHeader("Expires", "0");
+        verify(response).sendRedirect("load." + new HtmlContent(htmlContent).getHash() + ".html?a=b");
+    }
+
+    @Test
+    public void testDoGet_loadHtml_preloadHints() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = "<link rel=stylesheet href=app.css><script src='app.js'></script>".getBytes(StandardCharsets.UTF_8);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load.html");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).addHeader("Link", "<app.css>; rel=preload; as=style, <app.js>; rel=preload; as=script");
+        verify(response).sendRedirect("load." + new HtmlContent(htmlContent).getHash() + ".html");
+    }
+
+    @Test
+    public void testDoGet_loadVersionedHtml() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = "this is some HTML content".getBytes(StandardCharsets.UTF_8);
+        final String hash = new HtmlContent(htmlContent).getHash();
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load." + hash + ".html");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).addHeader("Cache-Control", "public, max-age=31536000, immutable");
+        verify(response).addHeader("ETag", "\"" + hash + "\"");
         verify(response.getOutputStream()).write(htmlContent);
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testDoGet_loadVersionedHtml_contentIsCached() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = "this is some HTML content".getBytes(StandardCharsets.UTF_8);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load." + new HtmlContent(htmlContent).getHash() + ".html");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(htmlContentProvider, times(1)).getContent();
+    }
+
+    @Test
+    public void testDoGet_loadVersionedHtml_gzip() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = new String(new char[1000]).replace("\0", "compressible ").getBytes(StandardCharsets.UTF_8);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load." + new HtmlContent(htmlContent).getHash() + ".html");
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate, br");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        final HtmlContent.Variant gzip = new HtmlContent(htmlContent).select("gzip");
+        verify(response).addHeader("Content-Encoding", "gzip");
+        verify(response).addHeader("ETag", gzip.getEtag());
+        verify(response.getOutputStream()).write(gzip.getBytes());
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testDoGet_loadVersionedHtml_notModified() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = "this is some HTML content".getBytes(StandardCharsets.UTF_8);
+        final String hash = new HtmlContent(htmlContent).getHash();
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load." + hash + ".html");
+        when(request.getHeader("If-None-Match")).thenReturn("\"" + hash + "\"");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response.getOutputStream(), never()).write(htmlContent);
+    }
+
+    @Test
+    public void testDoGet_loadVersionedHtml_staleHash() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final byte[] htmlContent = "this is some HTML content".getBytes(StandardCharsets.UTF_8);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null);
+
+        // Define mock behaviour
+        when(request.getPathInfo()).thenReturn("/load.0123456789abcdef.html");
+        when(htmlContentProvider.getContent()).thenReturn(htmlContent);
+
+        // Execute test
+        servlet.doGet(request, response);
+
+        // Verify results
+        // Served as is rather than redirected, so nodes with different content mid-upgrade can't bounce the browser around.
+        verify(response).addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        verify(response, never()).addHeader(eq("ETag"), anyString());
+        verify(response, never()).sendRedirect(anyString());
+        verify(response.getOutputStream()).write(htmlContent);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testDoGet_metrics() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        final StringWriter body = new StringWriter();
+        servlet = new DevOpticsJIRAServerPluginServlet(null, authenticationContext);
+
+        // Define mock behaviour
+        when(authenticationContext.isLoggedInUser()).thenReturn(false);
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        // Execute test
+        when(request.getPathInfo()).thenReturn("/not supported");
+        servlet.doGet(request, response);
+        when(request.getPathInfo()).thenReturn("/is-logged-in");
+        servlet.doGet(request, response);
+        when(request.getPathInfo()).thenReturn("/metrics");
+        servlet.doGet(request, response);
+
+        // Verify results
+        final String metrics = body.toString();
+        assertTrue(metrics, metrics.contains("devoptics_requests_total{route=\"not-found\",status=\"404\"} 1\n"));
+        assertTrue(metrics, metrics.contains("devoptics_requests_total{route=\"/is-logged-in\",status=\"401\"} 1\n"));
+        assertTrue(metrics, metrics.contains("devoptics_request_duration_seconds_count{route=\"/is-logged-in\"} 1\n"));
+        assertTrue(metrics, metrics.contains("# TYPE devoptics_request_duration_seconds histogram\n"));
+        assertTrue(metrics, metrics.contains("devoptics_request_duration_seconds_bucket{route=\"/is-logged-in\",le=\"67.108864\"} 1\n"));
+        assertTrue(metrics, metrics.contains("devoptics_request_duration_seconds_bucket{route=\"/is-logged-in\",le=\"+Inf\"} 1\n"));
+        assertTrue(metrics, metrics.contains("devoptics_auth_cache_misses_total 1\n"));
+        verify(response).setContentType("text/plain; version=0.0.4; charset=utf-8");
+    }
+
+    @Test
+    public void testDoGet_ready() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        final AuthenticationContext authenticationContext = mock(AuthenticationContext.class);
+        final StringWriter body = new StringWriter();
+        // Jira can't make an XSRF token outside of a real request.
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, authenticationContext, null, req -> {
+            throw new IllegalStateException("No request");
+        });
+
+        // Define mock behaviour
+        when(htmlContentProvider.getContent()).thenReturn("<html>{{loggedIn}}</html>".getBytes(StandardCharsets.UTF_8));
+        when(authenticationContext.isLoggedInUser()).thenReturn(false);
+        when(request.getPathInfo()).thenReturn("/ready");
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        // Execute test
+        servlet.doGet(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        System.setProperty(WARMUP_ITERATIONS_KEY, "2");
+        servlet.init();
+        servlet.doGet(request, response);
+
+        // Verify results.  Everything was warmed up, and the content was only loaded the once.
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        final String ready = body.toString();
+        assertTrue(ready, ready.contains("Ready\n"));
+        assertTrue(ready, ready.contains("\ncontent\t"));
+        assertTrue(ready, ready.contains("\n/bootstrap\t"));
+        assertTrue(ready, ready.contains("\n/load.{hash}.html (gzip)\t"));
+        assertTrue(ready, !ready.contains("failed"));
+        verify(htmlContentProvider, times(1)).getContent();
+    }
+
+    @Test
+    public void testDoGet_ready_noContent() throws ServletException, IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final HtmlContentProvider htmlContentProvider = mock(HtmlContentProvider.class);
+        final StringWriter body = new StringWriter();
+        servlet = new DevOpticsJIRAServerPluginServlet(htmlContentProvider, null, null, req -> "a token");
+
+        // Define mock behaviour
+        when(htmlContentProvider.getContent()).thenThrow(new IOException("no content"));
+        when(request.getPathInfo()).thenReturn("/ready");
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        // Execute test
+        servlet.init();
+        servlet.doGet(request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        final String ready = body.toString();
+        assertTrue(ready, ready.startsWith("Not ready\n"));
+        assertTrue(ready, ready.contains("\ncontent\t") && ready.contains("\tfailed\n"));
+    }
+
     @Test
     public void testDoGet_unknownPath() throws ServletException, IOException {
 
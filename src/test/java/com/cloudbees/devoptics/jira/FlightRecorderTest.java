@@ -0,0 +1,77 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNotRecording() throws IOException {
+
+        // Nothing's listening, so nothing's asked of the request.
+        final FlightRecorder.Request request = FlightRecorder.request(null);
+        request.finish(null, "/is-logged-in", 200, 3);
+
+        assertTrue(FlightRecorder.timed(() -> true).isLoggedInUser());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, FlightRecorder.timed(() -> new byte[] { 1, 2, 3 }).getContent());
+    }
+
+    @Test
+    public void testRecording() throws IOException {
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.cloudbees.devoptics.jira.Authentication");
+            recording.enable("com.cloudbees.devoptics.jira.ContentLoad");
+            recording.enable("com.cloudbees.devoptics.jira.Request");
+            recording.start();
+
+            final FlightRecorder.Request request = FlightRecorder.request(Warmup.request("/load.html", null));
+            assertTrue(FlightRecorder.timed(() -> true).isLoggedInUser());
+            FlightRecorder.timed(() -> new byte[100]).getContent();
+            request.finish(Warmup.request("/load.html", null), "/load.html", 302, -1);
+
+            recording.stop();
+            final Path file = folder.newFile("recording.jfr").toPath();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        assertEquals(3, events.size());
+        for (final RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+                case "com.cloudbees.devoptics.jira.Authentication":
+                    assertTrue(event.getBoolean("loggedIn"));
+                    break;
+                case "com.cloudbees.devoptics.jira.ContentLoad":
+                    assertEquals(100L, event.getLong("size"));
+                    break;
+                default:
+                    assertEquals("com.cloudbees.devoptics.jira.Request", event.getEventType().getName());
+                    assertEquals("/load.html", event.getString("route"));
+                    assertEquals(302, event.getInt("status"));
+                    assertEquals(-1L, event.getLong("declaredContentLength"));
+                    assertFalse(event.getBoolean("sessionCreated"));
+                    assertFalse(event.hasField("hadSession"));
+                    break;
+            }
+        }
+    }
+}
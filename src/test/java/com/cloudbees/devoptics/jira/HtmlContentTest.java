@@ -0,0 +1,87 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class HtmlContentTest {
+
+    private static final byte[] COMPRESSIBLE = new String(new char[1000]).replace("\0", "compressible ").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testAccepts() {
+
+        assertTrue(HtmlContent.accepts("gzip", "gzip"));
+        assertTrue(HtmlContent.accepts("deflate, GZIP;q=0.5", "gzip"));
+        assertTrue(HtmlContent.accepts("*", "gzip"));
+        assertFalse(HtmlContent.accepts(null, "gzip"));
+        assertFalse(HtmlContent.accepts("", "gzip"));
+        assertFalse(HtmlContent.accepts("deflate, br", "gzip"));
+        assertFalse(HtmlContent.accepts("gzip;q=0", "gzip"));
+        assertFalse(HtmlContent.accepts("*, gzip;q=0", "gzip"));
+        assertFalse(HtmlContent.accepts("*;q=0", "gzip"));
+    }
+
+    @Test
+    public void testTemplate() throws IOException {
+
+        final HtmlContent content = new HtmlContent("<p>{{name}}</p>".getBytes(StandardCharsets.UTF_8), "name");
+
+        // What's served statically has the placeholders left empty, but the template keeps them.
+        assertEquals("<p></p>", new String(content.getIdentity().getBytes(), StandardCharsets.UTF_8));
+        assertTrue(content.getTemplate().hasPlaceholders());
+    }
+
+    @Test
+    public void testMatches() {
+
+        assertTrue(HtmlContent.matches("\"abc\"", "\"abc\""));
+        assertTrue(HtmlContent.matches("W/\"abc\"", "\"abc\""));
+        assertTrue(HtmlContent.matches("\"xyz\", \"abc\"", "\"abc\""));
+        assertTrue(HtmlContent.matches("*", "\"abc\""));
+        assertFalse(HtmlContent.matches(null, "\"abc\""));
+        assertFalse(HtmlContent.matches("\"xyz\"", "\"abc\""));
+    }
+
+    @Test
+    public void testSelect_gzip() throws IOException {
+
+        final HtmlContent content = new HtmlContent(COMPRESSIBLE);
+
+        final HtmlContent.Variant variant = content.select("gzip, deflate");
+
+        assertEquals("gzip", variant.getContentEncoding());
+        assertFalse(content.getIdentity().getEtag().equals(variant.getEtag()));
+        try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(variant.getBytes()))) {
+            assertEquals(new String(COMPRESSIBLE, StandardCharsets.UTF_8), new String(IOUtils.toByteArray(gzis), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSelect_identity() throws IOException {
+
+        final HtmlContent content = new HtmlContent(COMPRESSIBLE);
+
+        assertSame(content.getIdentity(), content.select(null));
+        assertSame(content.getIdentity(), content.select("br"));
+        assertSame(COMPRESSIBLE, content.getIdentity().getBytes());
+    }
+
+    @Test
+    public void testSelect_incompressible() throws IOException {
+
+        // Tiny content gets bigger when gzip'd, so we should never offer a gzip variant for it.
+        final HtmlContent content = new HtmlContent("tiny".getBytes(StandardCharsets.UTF_8));
+
+        assertSame(content.getIdentity(), content.select("gzip"));
+    }
+}
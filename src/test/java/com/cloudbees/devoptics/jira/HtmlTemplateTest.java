@@ -0,0 +1,82 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class HtmlTemplateTest {
+
+    @Test
+    public void testNoPlaceholders() throws IOException {
+
+        final byte[] content = "<p>{{unknown}} {{ not closed</p>".getBytes(StandardCharsets.UTF_8);
+        final HtmlTemplate template = new HtmlTemplate(content, "name");
+
+        // Unknown and unclosed placeholders are left as they are, and the content isn't copied.
+        assertFalse(template.hasPlaceholders());
+        assertSame(content, template.render(new String[1]));
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+
+        final HtmlTemplate template = new HtmlTemplate("<a title='{{ name }}'>{{other}}</a><script>'{{js:name}}'</script>".getBytes(StandardCharsets.UTF_8),
+                "name", "other");
+
+        assertTrue(template.hasPlaceholders());
+        assertEquals("<a title='plain'></a><script>'plain'</script>", write(template, "plain", null));
+        assertEquals("<a title='&#x3c;b&#x3e; &#x26; &#x22;&#x27;'>x</a><script>'\\u003cb\\u003e \\u0026 \\u0022\\u0027'</script>",
+                write(template, "<b> & \"'", "x"));
+        assertEquals("<a title='a/b\\c'></a><script>'a\\u002fb\\u005cc'</script>", write(template, "a/b\\c", ""));
+    }
+
+    @Test
+    public void testWrite_literalOpen() throws IOException {
+
+        final HtmlTemplate template = new HtmlTemplate("<p>{{ {{name}} {{{name}}}</p>".getBytes(StandardCharsets.UTF_8), "name");
+
+        // A stray {{ is written as it is, without swallowing the placeholder after it.
+        assertEquals("<p>{{ x {x}</p>", write(template, "x"));
+    }
+
+    @Test
+    public void testWrite_longValue() throws IOException {
+
+        final HtmlTemplate template = new HtmlTemplate("[{{js:name}}]".getBytes(StandardCharsets.UTF_8), "name");
+        final StringBuilder value = new StringBuilder();
+        final StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            value.append("a<");
+            expected.append("a\\u003c");
+        }
+        expected.append(']');
+
+        // Longer than the buffer escaped values are gathered in.
+        assertEquals(expected.toString(), write(template, value.toString()));
+    }
+
+    @Test
+    public void testWrite_nonAscii() throws IOException {
+
+        final HtmlTemplate template = new HtmlTemplate("{{name}}|{{js:name}}".getBytes(StandardCharsets.UTF_8), "name");
+
+        // Outside of ASCII, everything is escaped.  Code points beyond the BMP are one reference in HTML, but a surrogate
+        // pair in JavaScript.
+        assertEquals("&#xe9;&#x20ac;&#x1f600;&#x0a;|\\u00e9\\u20ac\\ud83d\\ude00\\u000a", write(template, "\u00e9\u20ac\ud83d\ude00\n"));
+    }
+
+    private static String write(final HtmlTemplate template, final String... values) throws IOException {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        template.write(values, baos);
+        assertEquals(baos.size(), template.length(values));
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+
+        // Every value must land in a bucket whose upper bound is at least the value, and within 12.5% of it.
+        for (long micros = 0; micros < 1_000_000; micros += 7) {
+            final long upperBound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(micros));
+            assertTrue(micros + " -> " + upperBound, upperBound >= micros);
+            assertTrue(micros + " -> " + upperBound, upperBound - micros <= Math.max(1, micros / 8));
+        }
+    }
+
+    @Test
+    public void testCumulativeCounts() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500L);
+        histogram.record(3_000L);
+        histogram.record(3_999L);
+        histogram.record(4_000L);
+        histogram.record(4_001L);
+        histogram.record(100_000L);
+        histogram.record(60_000_000_000L);
+
+        // At or under 1, 2, 4, 8, 16, 32, 64 and 128 microseconds, then everything.
+        assertArrayEquals(new long[] { 1, 1, 4, 5, 5, 5, 5, 6, 7 }, histogram.cumulativeCounts(7));
+    }
+
+    @Test
+    public void testEmpty() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.quantileMicros(0.99));
+        assertArrayEquals(new long[4], histogram.cumulativeCounts(2));
+    }
+
+    @Test
+    public void testQuantiles() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500_000L, histogram.getSumNanos());
+        assertTrue(histogram.quantileMicros(0.5) >= 500 && histogram.quantileMicros(0.5) <= 500 * 9 / 8);
+        assertTrue(histogram.quantileMicros(0.99) >= 990 && histogram.quantileMicros(0.99) <= 990 * 9 / 8);
+        assertTrue(histogram.quantileMicros(1.0) >= 1000 && histogram.quantileMicros(1.0) <= 1000 * 9 / 8);
+    }
+}
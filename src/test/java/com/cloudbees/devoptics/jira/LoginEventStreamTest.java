@@ -0,0 +1,134 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Answers;
+
+public class LoginEventStreamTest {
+
+    private static final long HEARTBEAT_MILLIS = 30_000L;
+    private static final byte[] LOGGED_IN = "event: login-state\ndata: Yes\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LOGGED_OUT = "event: login-state\ndata: No\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final AsyncContext asyncContext = mock(AsyncContext.class, Answers.RETURNS_DEEP_STUBS);
+    private final AtomicBoolean loggedIn = new AtomicBoolean();
+    private final AtomicLong now = new AtomicLong();
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+    private final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+    private final HttpSession session = mock(HttpSession.class);
+    // A long check interval, so the background thread never gets in the way of the test calling check() itself.
+    private final LoginEventStream stream = new LoginEventStream(s -> loggedIn.get(), HEARTBEAT_MILLIS, 3_600_000L, 300_000L, now::get);
+
+    @Before
+    public void setUp() {
+
+        when(request.getSession(false)).thenReturn(session);
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+    }
+
+    @After
+    public void tearDown() {
+        stream.shutdown();
+    }
+
+    @Test
+    public void testCheck_heartbeat() throws IOException {
+
+        stream.open(request, response, false);
+        final ServletOutputStream outputStream = asyncContext.getResponse().getOutputStream();
+
+        stream.check();
+        verify(outputStream, never()).write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS));
+        stream.check();
+        verify(outputStream).write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCheck_loggedIn() throws IOException {
+
+        stream.open(request, response, false);
+        final ServletOutputStream outputStream = asyncContext.getResponse().getOutputStream();
+
+        loggedIn.set(true);
+        stream.check();
+
+        verify(outputStream).write(LOGGED_IN);
+        assertEquals(1, stream.getOpenConnections());
+    }
+
+    @Test
+    public void testCheck_sessionInvalidated() throws IOException {
+
+        final LoginEventStream invalidating = new LoginEventStream(s -> {
+            throw new IllegalStateException("invalidated");
+        }, HEARTBEAT_MILLIS, 3_600_000L, 300_000L, now::get);
+        try {
+            invalidating.open(request, response, true);
+            final ServletOutputStream outputStream = asyncContext.getResponse().getOutputStream();
+            invalidating.check();
+
+            verify(outputStream).write(LOGGED_OUT);
+            verify(asyncContext).complete();
+            assertEquals(0, invalidating.getOpenConnections());
+        } finally {
+            invalidating.shutdown();
+        }
+    }
+
+    @Test
+    public void testOpen() throws IOException {
+
+        stream.open(request, response, true);
+
+        verify(response).setContentType("text/event-stream");
+        verify(response.getOutputStream()).write("retry: 30000\n\n".getBytes(StandardCharsets.UTF_8));
+        verify(response.getOutputStream()).write(LOGGED_IN);
+        verify(asyncContext).setTimeout(300_000L);
+        assertEquals(1, stream.getOpenConnections());
+    }
+
+    @Test
+    public void testOpen_asyncNotSupported() throws IOException {
+
+        when(request.isAsyncSupported()).thenReturn(false);
+
+        stream.open(request, response, false);
+
+        verify(response.getOutputStream()).write(LOGGED_OUT);
+        verify(request, never()).startAsync();
+        assertEquals(0, stream.getOpenConnections());
+    }
+
+    @Test
+    public void testOpen_noSession() throws IOException {
+
+        when(request.getSession(false)).thenReturn(null);
+
+        stream.open(request, response, false);
+
+        verify(request, never()).startAsync();
+        assertEquals(0, stream.getOpenConnections());
+    }
+}
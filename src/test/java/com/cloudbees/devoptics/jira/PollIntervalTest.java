@@ -0,0 +1,137 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Test;
+
+public class PollIntervalTest {
+
+    private static final String UNAUTHENTICATED_POLLS = "com.cloudbees.devoptics.jira.PollInterval.unauthenticatedPolls";
+
+    private final AtomicLong now = new AtomicLong();
+    private double random = 0.5;
+    // Busy at 200 requests a second, or 50ms a request.
+    private final PollInterval pollInterval = new PollInterval(5_000L, 60_000L, 200, 50L, now::get, () -> random);
+
+    @Test
+    public void testSuggest_busyLatency() {
+
+        for (int i = 0; i < 10; i++) {
+            pollInterval.record(1_000_000_000L);
+        }
+        now.set(1_000_000_000L);
+
+        // A tenth-ish of a second's worth of 1s requests is about twice the busy latency.
+        final double latencyMillis = 1_000 * (1 - Math.exp(-0.1));
+        assertEquals(Math.round(5_000 * latencyMillis / 50), pollInterval.suggest(0));
+    }
+
+    @Test
+    public void testSuggest_busyRate() {
+
+        for (int i = 0; i < 10_000; i++) {
+            pollInterval.record(1_000L);
+        }
+        now.set(1_000_000_000L);
+
+        final double requestsPerSecond = 10_000 * (1 - Math.exp(-0.1));
+        assertEquals(Math.round(5_000 * requestsPerSecond / 200), pollInterval.suggest(0));
+
+        // Once it's quiet again, the interval comes back down.
+        now.set(60_000_000_000L);
+        assertEquals(5_000L, pollInterval.suggest(0));
+    }
+
+    @Test
+    public void testSuggest_idle() {
+
+        pollInterval.record(1_000_000L);
+        now.set(1_000_000_000L);
+
+        assertEquals(5_000L, pollInterval.suggest(0));
+    }
+
+    @Test
+    public void testSuggest_jitter() {
+
+        random = 0.0;
+        assertEquals(4_000L, pollInterval.suggest(0));
+        random = 0.999_999;
+        assertEquals(6_000L, pollInterval.suggest(0));
+    }
+
+    @Test
+    public void testSuggest_loggedInClearsBackoff() {
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        final HttpSession session = mock(HttpSession.class);
+        when(request.getSession(false)).thenReturn(session);
+        when(session.getAttribute(UNAUTHENTICATED_POLLS)).thenReturn(3);
+
+        assertEquals(5_000L, pollInterval.suggest(request, true));
+
+        verify(session).removeAttribute(UNAUTHENTICATED_POLLS);
+    }
+
+    @Test
+    public void testSuggest_noSession() {
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+
+        assertEquals(5_000L, pollInterval.suggest(request, false));
+        assertEquals(5_000L, pollInterval.suggest(request, false));
+    }
+
+    @Test
+    public void testSuggest_notLoggedIn() {
+
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        final HttpSession session = mock(HttpSession.class);
+        when(request.getSession(false)).thenReturn(session);
+        when(session.getAttribute(UNAUTHENTICATED_POLLS)).thenReturn(2);
+
+        assertEquals(20_000L, pollInterval.suggest(request, false));
+
+        verify(session).setAttribute(UNAUTHENTICATED_POLLS, 3);
+        verify(session, never()).removeAttribute(UNAUTHENTICATED_POLLS);
+    }
+
+    @Test
+    public void testSuggest_unauthenticatedBackoff() {
+
+        assertEquals(5_000L, pollInterval.suggest(0));
+        assertEquals(10_000L, pollInterval.suggest(1));
+        assertEquals(40_000L, pollInterval.suggest(3));
+        assertEquals(60_000L, pollInterval.suggest(4));
+        random = 0.999_999;
+        assertEquals(60_000L, pollInterval.suggest(100));
+    }
+
+    @Test
+    public void testWrite() {
+
+        for (int i = 0; i < 100; i++) {
+            pollInterval.record(2_000_000L);
+        }
+        now.set(1_000_000_000L);
+        final StringWriter out = new StringWriter();
+
+        pollInterval.write(new PrometheusWriter(new PrintWriter(out, true)));
+
+        final String metrics = out.toString();
+        assertTrue(metrics, metrics.contains("devoptics_request_rate_ewma " + 100 * (1 - Math.exp(-0.1)) + "\n"));
+        assertTrue(metrics, metrics.contains("devoptics_request_duration_seconds_ewma "));
+    }
+}
@@ -0,0 +1,95 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class PreloadHintsTest {
+
+    /* What a container's response looks like if it can send early hints. */
+    public static interface EarlyHintsResponse extends HttpServletResponse {
+        void sendEarlyHints();
+    }
+
+    @Test
+    public void testLinkHeader() {
+
+        final String html = "<!DOCTYPE html><html><head>"
+                + "<link rel='preconnect' href='https://api.example.com'>"
+                + "<link rel=stylesheet href=/jira/s/app.css>"
+                + "<link rel=\"preload\" href=\"fonts/a.woff2\" as=\"font\" type=\"font/woff2\" crossorigin>"
+                + "<link rel='icon' href='favicon.ico'>"
+                + "<script type='text/javascript' src='https://cdn.example.com/lib.js?v=1'></script>"
+                + "<SCRIPT TYPE=module SRC=app.mjs></SCRIPT>"
+                + "<script>var s = '<script src=\"not-me.js\"></scr' + 'ipt>'; var l = '<link rel=stylesheet href=nor-me.css>';</script>"
+                + "<!-- <script src='commented-out.js'></script> -->"
+                + "</head><body></body></html>";
+
+        assertEquals("<https://api.example.com>; rel=preconnect, "
+                + "<https://cdn.example.com>; rel=preconnect, "
+                + "</jira/s/app.css>; rel=preload; as=style, "
+                + "<fonts/a.woff2>; rel=preload; as=font; type=font/woff2; crossorigin, "
+                + "<https://cdn.example.com/lib.js?v=1>; rel=preload; as=script, "
+                + "<app.mjs>; rel=modulepreload", PreloadHints.linkHeader(html));
+    }
+
+    @Test
+    public void testLinkHeader_nothingToHint() throws Exception {
+
+        // Inline scripts only, and API calls only made once the page knows where Jira is.
+        final String html;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("serve-me.html")) {
+            html = new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8);
+        }
+        assertNull(PreloadHints.linkHeader(html));
+    }
+
+    @Test
+    public void testLinkHeader_unsafe() {
+
+        assertNull(PreloadHints.linkHeader("<script src='{{js:baseUrl}}/app.js'></script>"));
+        assertNull(PreloadHints.linkHeader("<script src='data:text/javascript,alert(1)'></script>"));
+        assertNull(PreloadHints.linkHeader("<script src='javascript:alert(1)'></script>"));
+        assertNull(PreloadHints.linkHeader("<script src='a,b.js'></script>"));
+        assertNull(PreloadHints.linkHeader("<script src='a>.js'></script>"));
+        assertNull(PreloadHints.linkHeader("<link rel=stylesheet href='a b.css'>"));
+        assertNull(PreloadHints.linkHeader("<link rel=preload href='a.js' as='script; rel=x'>"));
+    }
+
+    @Test
+    public void testSendEarlyHints() {
+
+        final AtomicInteger sent = new AtomicInteger();
+        final HttpServletResponse container = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { EarlyHintsResponse.class }, (proxy, method, args) -> {
+                    if ("sendEarlyHints".equals(method.getName())) {
+                        sent.incrementAndGet();
+                    }
+                    return null;
+                });
+
+        assertTrue(PreloadHints.sendEarlyHints(new RecordingResponse(new HttpServletResponseWrapper(container))));
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void testSendEarlyHints_unsupported() {
+
+        final HttpServletResponse container = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> null);
+
+        assertFalse(PreloadHints.sendEarlyHints(new RecordingResponse(container)));
+    }
+}
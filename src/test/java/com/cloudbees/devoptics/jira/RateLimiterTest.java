@@ -0,0 +1,70 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(42 * SECOND);
+    private final RateLimiter rateLimiter = new RateLimiter(10, now::get).limit("/limited", 1, 3);
+
+    @Test
+    public void testAcquire_burstThenShed() {
+
+        // A full bucket allows a burst.
+        assertEquals(0, rateLimiter.acquire("/limited", "client"));
+        assertEquals(0, rateLimiter.acquire("/limited", "client"));
+        assertEquals(0, rateLimiter.acquire("/limited", "client"));
+
+        // Then it's empty, and refills at one a second.
+        final long retryAfter = rateLimiter.acquire("/limited", "client");
+        assertTrue(retryAfter > 0 && retryAfter <= SECOND);
+        assertEquals(1, rateLimiter.getShed("/limited"));
+
+        now.addAndGet(retryAfter);
+        assertEquals(0, rateLimiter.acquire("/limited", "client"));
+    }
+
+    @Test
+    public void testAcquire_clientsAreIndependent() {
+
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire("/limited", "greedy");
+        }
+
+        assertTrue(rateLimiter.acquire("/limited", "greedy") > 0);
+        assertEquals(0, rateLimiter.acquire("/limited", "polite"));
+    }
+
+    @Test
+    public void testAcquire_unlimitedRoute() {
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, rateLimiter.acquire("/unlimited", "client"));
+        }
+        assertEquals(0, rateLimiter.getBuckets("/unlimited"));
+    }
+
+    @Test
+    public void testSweep_idleBucketsEvicted() {
+
+        // Lots of clients, each making one request, then going quiet.
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.acquire("/limited", "client-" + i);
+        }
+        assertEquals(100, rateLimiter.getBuckets("/limited"));
+
+        // Once their buckets have refilled, they're swept out as soon as we're over the limit.
+        now.addAndGet(SECOND);
+        for (int i = 0; i < 64; i++) {
+            rateLimiter.acquire("/limited", "active");
+        }
+        assertTrue(rateLimiter.getBuckets("/limited") <= 10);
+    }
+}
@@ -0,0 +1,121 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RequestLogTest {
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+
+        final RequestLog log = new RequestLog(64);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String route = "/route-" + t;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    // Every field of a record agrees with every other, so a torn one would show.
+                    log.record(route, i, i, i % 2 == 0, String.valueOf(i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final List<RequestLog.Record> records = log.snapshot();
+        assertTrue(records.size() + " + " + log.getDropped(), records.size() + log.getDropped() >= 64);
+        long previous = -1;
+        for (final RequestLog.Record record : records) {
+            assertTrue(record.getSequence() > previous);
+            assertTrue(record.getSequence() >= 40_000 - 64);
+            assertTrue(record.getRoute().startsWith("/route-"));
+            assertEquals(record.getStatus(), record.getNanos());
+            assertEquals(record.getStatus() % 2 == 0, record.getLoggedInUser());
+            assertEquals(String.valueOf(record.getStatus()), record.getRedirect());
+            previous = record.getSequence();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+
+        final RequestLog log = new RequestLog(0);
+        log.record("/is-logged-in", 200, 1_000, true, null);
+
+        assertTrue(log.snapshot().isEmpty());
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    public void testSnapshot() {
+
+        final RequestLog log = new RequestLog(3);
+        log.record("/is-logged-in", 401, 1_000, false, null);
+        log.record("/do-login", 302, 2_000, false, "/login.jsp");
+
+        final List<RequestLog.Record> records = log.snapshot();
+        assertEquals(2, records.size());
+        assertEquals(0, records.get(0).getSequence());
+        assertEquals("/is-logged-in", records.get(0).getRoute());
+        assertEquals(401, records.get(0).getStatus());
+        assertEquals(1_000, records.get(0).getNanos());
+        assertEquals(Boolean.FALSE, records.get(0).getLoggedInUser());
+        assertNull(records.get(0).getRedirect());
+        assertEquals("/login.jsp", records.get(1).getRedirect());
+        assertTrue(records.get(1).getTimestamp() <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void testWrapsAround() {
+
+        // Rounded up to 4 slots.
+        final RequestLog log = new RequestLog(3);
+        for (int i = 0; i < 10; i++) {
+            log.record("/metrics", 200 + i, i, null, null);
+        }
+
+        final List<RequestLog.Record> records = log.snapshot();
+        assertEquals(4, records.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, records.get(i).getSequence());
+            assertEquals(206 + i, records.get(i).getStatus());
+        }
+    }
+
+    @Test
+    public void testWrite() {
+
+        final RequestLog log = new RequestLog(8);
+        log.record("/do-login", 302, 1_500_000, false, "/login.jsp?os_destination=x");
+        log.record("/metrics", 200, 250_000, null, null);
+        final StringWriter out = new StringWriter();
+
+        log.write(new PrintWriter(out, true));
+
+        final String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        final String[] first = lines[0].split("\t");
+        assertEquals(7, first.length);
+        assertEquals("0", first[0]);
+        assertEquals("/do-login", first[2]);
+        assertEquals("302", first[3]);
+        assertEquals("1.5", first[4]);
+        assertEquals("no", first[5]);
+        assertEquals("/login.jsp?os_destination=x", first[6]);
+        final String[] second = lines[1].split("\t");
+        assertEquals("0.25", second[4]);
+        assertEquals("-", second[5]);
+        assertEquals("-", second[6]);
+    }
+}
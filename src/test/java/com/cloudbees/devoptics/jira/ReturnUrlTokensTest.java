@@ -0,0 +1,120 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.cloudbees.devoptics.jira.DevOpticsJIRAServerPluginServlet.SigningKeyStore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ReturnUrlTokensTest {
+
+    private static final String RETURN_URL = "https://devoptics.cloudbees.com/u/?a=b&c=d";
+    private static final long TTL_SECONDS = 600L;
+
+    private final AtomicReference<String> key = new AtomicReference<>(ReturnUrlTokens.generateKey());
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1_500_000_000L);
+    private final SigningKeyStore signingKeyStore = () -> {
+        loads.incrementAndGet();
+        return key.get();
+    };
+    private final ReturnUrlTokens tokens = new ReturnUrlTokens(signingKeyStore, TTL_SECONDS, now::get);
+
+    @Test
+    public void testCreate_keyConfirmed() {
+
+        tokens.create(RETURN_URL);
+        now.addAndGet(60);
+        tokens.create(RETURN_URL);
+        now.addAndGet(60);
+        tokens.create(RETURN_URL);
+
+        // Loaded, then loaded again and found the same, so there's no need to look again.
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testCreate_lostKeyRace() {
+
+        // Another node's key overwrote ours in the store.  Once we notice, our tokens are signed with the stored key.
+        tokens.create(RETURN_URL);
+        key.set(ReturnUrlTokens.generateKey());
+        final ReturnUrlTokens otherNode = new ReturnUrlTokens(signingKeyStore, TTL_SECONDS, now::get);
+        now.addAndGet(60);
+
+        assertEquals(RETURN_URL, otherNode.verify(tokens.create(RETURN_URL)));
+    }
+
+    @Test
+    public void testVerify() {
+        assertEquals(RETURN_URL, tokens.verify(tokens.create(RETURN_URL)));
+    }
+
+    @Test
+    public void testVerify_expired() {
+
+        final String token = tokens.create(RETURN_URL);
+        now.addAndGet(TTL_SECONDS + 1);
+
+        assertNull(tokens.verify(token));
+    }
+
+    @Test
+    public void testVerify_keyChangedElsewhere() {
+
+        // Another node's key won the race, so the one we cached is stale.
+        final ReturnUrlTokens otherNode = new ReturnUrlTokens(signingKeyStore, TTL_SECONDS, now::get);
+        tokens.create(RETURN_URL);
+        key.set(ReturnUrlTokens.generateKey());
+        now.addAndGet(60);
+
+        assertEquals(RETURN_URL, tokens.verify(otherNode.create(RETURN_URL)));
+    }
+
+    @Test
+    public void testVerify_malformed() {
+
+        assertNull(tokens.verify(""));
+        assertNull(tokens.verify("no-dot"));
+        assertNull(tokens.verify("!!!.!!!"));
+        assertNull(tokens.verify("."));
+    }
+
+    @Test
+    public void testVerify_reloadRateLimited() {
+
+        final String token = new ReturnUrlTokens(ReturnUrlTokens::generateKey, TTL_SECONDS, now::get).create(RETURN_URL);
+        tokens.create(RETURN_URL);
+        now.addAndGet(60);
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(tokens.verify(token));
+        }
+
+        // The first bad signature reloads the key.  The rest have to wait.
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testVerify_tampered() {
+
+        final String token = tokens.create(RETURN_URL);
+        final String otherToken = tokens.create("https://evil.example.com/");
+
+        // Swap the payload from one token on to the signature of the other.
+        assertNull(tokens.verify(otherToken.substring(0, otherToken.indexOf('.')) + token.substring(token.indexOf('.'))));
+    }
+
+    @Test
+    public void testVerify_wrongKey() {
+
+        final String token = new ReturnUrlTokens(ReturnUrlTokens::generateKey, TTL_SECONDS, now::get).create(RETURN_URL);
+
+        assertNull(tokens.verify(token));
+    }
+}
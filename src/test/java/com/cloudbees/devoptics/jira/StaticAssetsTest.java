@@ -0,0 +1,207 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Answers;
+
+public class StaticAssetsTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testServe_classpath() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final CapturingOutputStream outputStream = new CapturingOutputStream();
+        final StaticAssets assets = new StaticAssets(null, "images/", 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // Execute test
+        assets.serve("DevOptics Logo (144px).png", request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("image/png");
+        verify(response).addHeader("Cache-Control", "public, max-age=60");
+        verify(response).setContentLengthLong(outputStream.toByteArray().length);
+    }
+
+    @Test
+    public void testServe_file() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final CapturingOutputStream outputStream = new CapturingOutputStream();
+        final File file = asset("js/app.js", CONTENT);
+        final StaticAssets assets = new StaticAssets(folder.getRoot().toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // Execute test
+        assets.serve("js/app.js", request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentType("application/javascript;charset=UTF-8");
+        verify(response).setContentLengthLong(CONTENT.length);
+        verify(response).setDateHeader("Last-Modified", file.lastModified());
+        assertArrayEquals(CONTENT, outputStream.toByteArray());
+    }
+
+    @Test
+    public void testServe_notFound() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        asset("secret.txt", CONTENT);
+        final File root = folder.newFolder("assets");
+        final StaticAssets assets = new StaticAssets(root.toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Execute test.  Nothing outside the directory, and no directories.
+        for (final String name : Arrays.asList("missing.js", "../secret.txt", "a/../../secret.txt", "/secret.txt", "..\\secret.txt", "", ".")) {
+            assets.serve(name, request, response);
+        }
+
+        // Verify results
+        verify(response, times(7)).setStatus(HttpServletResponse.SC_NOT_FOUND);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testServe_notModified() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final File file = asset("app.css", CONTENT);
+        final StaticAssets assets = new StaticAssets(folder.getRoot().toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(file.lastModified() / 1000 * 1000);
+
+        // Execute test
+        assets.serve("app.css", request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testServe_range() throws IOException {
+
+        testServe_range("bytes=2-4", "bytes 2-4/10", "234");
+        testServe_range("bytes=7-", "bytes 7-9/10", "789");
+        testServe_range("bytes=-3", "bytes 7-9/10", "789");
+        testServe_range("bytes=8-100", "bytes 8-9/10", "89");
+    }
+
+    @Test
+    public void testServe_range_unsatisfiable() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        asset("app.js", CONTENT);
+        final StaticAssets assets = new StaticAssets(folder.getRoot().toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        when(request.getHeader("Range")).thenReturn("bytes=10-");
+
+        // Execute test
+        assets.serve("app.js", request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        verify(response).addHeader("Content-Range", "bytes */10");
+    }
+
+    @Test
+    public void testServe_sendfile() throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final File file = asset("big.png", new byte[100_000]);
+        final StaticAssets assets = new StaticAssets(folder.getRoot().toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getAttribute("org.apache.tomcat.sendfile.support")).thenReturn(Boolean.TRUE);
+
+        // Execute test
+        assets.serve("big.png", request, response);
+
+        // Verify results.  The container sends the file, not us.
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentLengthLong(100_000);
+        verify(request).setAttribute("org.apache.tomcat.sendfile.filename", file.toPath().toRealPath().toString());
+        verify(request).setAttribute("org.apache.tomcat.sendfile.start", 0L);
+        verify(request).setAttribute("org.apache.tomcat.sendfile.end", 100_000L);
+        verify(response, never()).getOutputStream();
+    }
+
+    private File asset(final String name, final byte[] content) throws IOException {
+
+        final File file = new File(folder.getRoot(), name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private void testServe_range(final String range, final String contentRange, final String expected) throws IOException {
+
+        // Setup test objects
+        final HttpServletRequest request = mock(HttpServletRequest.class, Answers.RETURNS_DEEP_STUBS);
+        final HttpServletResponse response = mock(HttpServletResponse.class, Answers.RETURNS_DEEP_STUBS);
+        final CapturingOutputStream outputStream = new CapturingOutputStream();
+        asset("app.js", CONTENT);
+        final StaticAssets assets = new StaticAssets(folder.getRoot().toPath(), null, 60, new AsyncBodyWriter(0, 60_000L));
+
+        // Define mock behaviour
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        when(request.getHeader("Range")).thenReturn(range);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        // Execute test
+        assets.serve("app.js", request, response);
+
+        // Verify results
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).addHeader("Content-Range", contentRange);
+        verify(response).setContentLengthLong(expected.length());
+        assertEquals(expected, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
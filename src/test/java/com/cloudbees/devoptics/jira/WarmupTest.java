@@ -0,0 +1,90 @@
+package com.cloudbees.devoptics.jira;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class WarmupTest {
+
+    @Test
+    public void testOptionalStepFails() {
+
+        final Warmup warmup = new Warmup();
+        warmup.run("content", true, () -> {
+            // Fine
+        });
+        warmup.run("/bootstrap", false, () -> {
+            throw new IllegalStateException("no user");
+        });
+        warmup.complete();
+
+        assertTrue(warmup.isReady());
+        assertEquals(2, warmup.getTimings().size());
+        assertNull(warmup.getTimings().get(0).getFailure());
+        assertEquals("/bootstrap", warmup.getTimings().get(1).getName());
+        assertEquals("java.lang.IllegalStateException: no user", warmup.getTimings().get(1).getFailure());
+    }
+
+    @Test
+    public void testRequiredStepFails() {
+
+        final Warmup warmup = new Warmup();
+        assertFalse(warmup.isReady());
+
+        warmup.run("content", true, () -> {
+            throw new IOException("no content");
+        });
+        warmup.run("/load.html", false, () -> {
+            // Still runs
+        });
+        warmup.complete();
+
+        assertFalse(warmup.isReady());
+        assertEquals(2, warmup.getTimings().size());
+        assertTrue(warmup.getTimings().get(0).isRequired());
+    }
+
+    @Test
+    public void testSyntheticRequest() throws IOException {
+
+        final HttpServletRequest request = Warmup.request("/load.html", "gzip");
+        final HttpServletResponse response = Warmup.response();
+
+        assertEquals("/load.html", request.getPathInfo());
+        assertEquals("gzip", request.getHeader("accept-encoding"));
+        assertNull(request.getHeader("If-None-Match"));
+        assertEquals(-1L, request.getDateHeader("If-Modified-Since"));
+        assertNull(request.getSession(false));
+        assertTrue(Warmup.isSynthetic(request));
+        assertFalse(response.isCommitted());
+        response.getOutputStream().write(new byte[100]);
+        response.getWriter().print("discarded");
+    }
+
+    @Test
+    public void testWrite() {
+
+        final Warmup warmup = new Warmup();
+        warmup.run("content", true, () -> {
+            // Fine
+        });
+        warmup.complete();
+        final StringWriter out = new StringWriter();
+
+        warmup.write(new PrometheusWriter(new PrintWriter(out, true)));
+
+        final String metrics = out.toString();
+        assertTrue(metrics, metrics.contains("devoptics_ready 1\n"));
+        assertTrue(metrics, metrics.contains("devoptics_startup_step_seconds{step=\"content\",outcome=\"ok\"} "));
+    }
+}